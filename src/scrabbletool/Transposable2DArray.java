@@ -10,12 +10,17 @@ package scrabbletool;
  * elements' states are related to the orientation of the outer array (as in,
  * for instance, nested 2D-arrays).
  * </p>
+ * <p>
+ * Each array is created together with its transposed view, so transposing
+ * never allocates.
+ * </p>
  * 
  * @author Philip Puryear
  */
 public class Transposable2DArray<T extends Transposable<T>> extends
         TwoDimensionalArray<T> implements Transposable<Transposable2DArray<T>> {
   private TwoDimensionalArray<T> transposedArray_;
+  private Transposable2DArray<T> transpose_;
 
   /**
    * Constructs a new array with the given number of rows and columns.
@@ -26,6 +31,7 @@ public class Transposable2DArray<T extends Transposable<T>> extends
   public Transposable2DArray(int rows, int cols) {
     super(rows, cols);
     transposedArray_ = new TwoDimensionalArray<T>(cols, rows);
+    transpose_ = new Transposable2DArray<T>(transposedArray_, this, this);
   }
 
   /**
@@ -45,6 +51,22 @@ public class Transposable2DArray<T extends Transposable<T>> extends
                               TwoDimensionalArray<T> colArray) {
     super(rowArray);
     transposedArray_ = colArray;
+    transpose_ = new Transposable2DArray<T>(colArray, this, this);
+  }
+
+  /**
+   * Constructs the transposed view of another array.
+   * 
+   * @param rowArray The underlying array.
+   * @param colArray A transposed version of {@code rowArray}.
+   * @param transpose The array that this is the transposed view of.
+   */
+  private Transposable2DArray(TwoDimensionalArray<T> rowArray,
+                              TwoDimensionalArray<T> colArray,
+                              Transposable2DArray<T> transpose) {
+    super(rowArray);
+    transposedArray_ = colArray;
+    transpose_ = transpose;
   }
 
   @Override
@@ -71,10 +93,10 @@ public class Transposable2DArray<T extends Transposable<T>> extends
 
   /**
    * Returns a transposed view of this array, backed by this object. This array
-   * is not modified by this operation.
+   * is not modified by this operation, and no new objects are created by it.
    */
   @Override
   public Transposable2DArray<T> transpose() {
-    return new Transposable2DArray<T>(transposedArray_, this);
+    return transpose_;
   }
 }
@@ -0,0 +1,246 @@
+package scrabbletool.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * A single micro-benchmark: a task that is run for a number of warmup
+ * operations, whose results are discarded, and then for a number of measured
+ * operations.
+ * </p>
+ * <p>
+ * Every measured operation is timed individually, so the {@link Report}
+ * includes latency percentiles as well as throughput. Where the JVM supports
+ * it, the report also includes the number of bytes allocated per operation by
+ * the benchmarking thread, and the number of garbage collections and the time
+ * spent in them during the measurement.
+ * </p>
+ */
+public class Benchmark {
+  /**
+   * The operation being benchmarked.
+   */
+  public interface Task {
+    /**
+     * Performs one operation.
+     * 
+     * @return Any value computed by the operation. The values are consumed by
+     *         the benchmark so that the operation cannot be optimized away.
+     */
+    public long run() throws Exception;
+  }
+
+  /**
+   * The measurements of one benchmark run.
+   */
+  public static class Report {
+    private String name_;
+    private int numOps_;
+    private long totalNanos_;
+    private long[] sortedNanos_;
+    private long allocatedBytes_;
+    private long numGCs_;
+    private long gcMillis_;
+
+    private Report(String name,
+                   long[] nanos,
+                   long totalNanos,
+                   long allocatedBytes,
+                   long numGCs,
+                   long gcMillis) {
+      name_ = name;
+      numOps_ = nanos.length;
+      totalNanos_ = totalNanos;
+      sortedNanos_ = nanos.clone();
+      Arrays.sort(sortedNanos_);
+      allocatedBytes_ = allocatedBytes;
+      numGCs_ = numGCs;
+      gcMillis_ = gcMillis;
+    }
+
+    /**
+     * Returns the name of the benchmark.
+     */
+    public String getName() {
+      return name_;
+    }
+
+    /**
+     * Returns the number of operations per second.
+     */
+    public double getThroughput() {
+      return numOps_ / (totalNanos_ / 1e9);
+    }
+
+    /**
+     * Returns the given percentile of the operation latencies, in
+     * nanoseconds.
+     * 
+     * @param percentile The percentile, between 0 and 100.
+     */
+    public long getLatency(double percentile) {
+      int index = (int) Math.ceil(percentile / 100 * numOps_) - 1;
+      return sortedNanos_[Math.max(0, Math.min(index, numOps_ - 1))];
+    }
+
+    /**
+     * Returns the number of bytes allocated per operation, or -1 if the JVM
+     * does not support allocation measurement.
+     */
+    public long getAllocatedBytesPerOp() {
+      return allocatedBytes_ < 0 ? -1 : allocatedBytes_ / numOps_;
+    }
+
+    /**
+     * Returns the allocation rate in megabytes per second, or -1 if the JVM
+     * does not support allocation measurement.
+     */
+    public double getAllocationRate() {
+      if (allocatedBytes_ < 0)
+        return -1;
+      return allocatedBytes_ / (1024.0 * 1024.0) / (totalNanos_ / 1e9);
+    }
+
+    /**
+     * Returns the header line for the table printed by {@link #toString()}.
+     */
+    public static String getHeader() {
+      return String.format("%-40s %12s %10s %10s %10s %10s %12s %9s %5s %6s",
+                           "benchmark", "ops/s", "p50 us", "p90 us", "p99 us",
+                           "max us", "B/op", "MB/s", "gcs", "gc ms");
+    }
+
+    @Override
+    public String toString() {
+      String format = "%-40s %12.1f %10.1f %10.1f %10.1f %10.1f %12d %9.1f "
+                      + "%5d %6d";
+      return String.format(format, name_, getThroughput(), getLatency(50) / 1e3,
+                           getLatency(90) / 1e3, getLatency(99) / 1e3,
+                           getLatency(100) / 1e3, getAllocatedBytesPerOp(),
+                           getAllocationRate(), numGCs_, gcMillis_);
+    }
+  }
+
+  /**
+   * A sink for the values returned by tasks.
+   */
+  private static volatile long sink_;
+
+  private String name_;
+  private int numWarmupOps_;
+  private int numMeasuredOps_;
+  private Task task_;
+
+  /**
+   * Creates a new benchmark.
+   * 
+   * @param name The name of the benchmark.
+   * @param numWarmupOps The number of operations to run before measuring.
+   * @param numMeasuredOps The number of operations to measure.
+   * @param task The operation to benchmark.
+   */
+  public Benchmark(String name,
+                   int numWarmupOps,
+                   int numMeasuredOps,
+                   Task task) {
+    if (numMeasuredOps < 1)
+      throw new IllegalArgumentException("Cannot create a benchmark with "
+                                         + numMeasuredOps + " measured "
+                                         + "operations. There must be at "
+                                         + "least 1.");
+    name_ = name;
+    numWarmupOps_ = numWarmupOps;
+    numMeasuredOps_ = numMeasuredOps;
+    task_ = task;
+  }
+
+  /**
+   * Returns the name of this benchmark.
+   */
+  public String getName() {
+    return name_;
+  }
+
+  /**
+   * Runs this benchmark on the current thread.
+   * 
+   * @return The measurements.
+   * @throws Exception If the task throws an exception.
+   */
+  public Report run() throws Exception {
+    long sink = 0;
+    for (int i = 0; i < numWarmupOps_; i++)
+      sink += task_.run();
+
+    long[] nanos = new long[numMeasuredOps_];
+    long allocatedBefore = getAllocatedBytes();
+    long numGCsBefore = getNumGCs();
+    long gcMillisBefore = getGCMillis();
+    long start = System.nanoTime();
+    for (int i = 0; i < numMeasuredOps_; i++) {
+      long opStart = System.nanoTime();
+      sink += task_.run();
+      nanos[i] = System.nanoTime() - opStart;
+    }
+    long totalNanos = System.nanoTime() - start;
+    long allocatedAfter = getAllocatedBytes();
+    sink_ += sink;
+
+    long allocatedBytes = -1;
+    if (allocatedBefore >= 0 && allocatedAfter >= 0)
+      allocatedBytes = allocatedAfter - allocatedBefore;
+    long numGCs = getNumGCs() - numGCsBefore;
+    long gcMillis = getGCMillis() - gcMillisBefore;
+    return new Report(name_, nanos, totalNanos, allocatedBytes, numGCs,
+                      gcMillis);
+  }
+
+  /**
+   * Returns the total number of bytes allocated by the current thread, or -1 if
+   * the JVM cannot measure it.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    com.sun.management.ThreadMXBean sunThreadBean;
+    sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+    if (!sunThreadBean.isThreadAllocatedMemorySupported()
+        || !sunThreadBean.isThreadAllocatedMemoryEnabled())
+      return -1;
+    return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread()
+                                                       .getId());
+  }
+
+  /**
+   * Returns the total number of garbage collections so far.
+   */
+  private static long getNumGCs() {
+    long numGCs = 0;
+    for (GarbageCollectorMXBean gcBean : getGCBeans())
+      numGCs += Math.max(0, gcBean.getCollectionCount());
+    return numGCs;
+  }
+
+  /**
+   * Returns the total time spent in garbage collection so far, in
+   * milliseconds.
+   */
+  private static long getGCMillis() {
+    long gcMillis = 0;
+    for (GarbageCollectorMXBean gcBean : getGCBeans())
+      gcMillis += Math.max(0, gcBean.getCollectionTime());
+    return gcMillis;
+  }
+
+  /**
+   * Returns the JVM's garbage collectors.
+   */
+  private static List<GarbageCollectorMXBean> getGCBeans() {
+    return ManagementFactory.getGarbageCollectorMXBeans();
+  }
+}
@@ -0,0 +1,337 @@
+package scrabbletool.bench;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import scrabbletool.ScrabbleTool;
+import scrabbletool.gaddag.Arc;
+import scrabbletool.gaddag.DictionaryReader;
+import scrabbletool.gaddag.GADDAG;
+import scrabbletool.gaddag.GADDAGFactory;
+import scrabbletool.gaddag.GADDAGFactory.WordSizeException;
+import scrabbletool.gaddag.PackedGADDAG;
+import scrabbletool.game.Alphabet;
+import scrabbletool.game.Game;
+import scrabbletool.game.GameFactory;
+import scrabbletool.game.Letter;
+import scrabbletool.game.Move;
+import scrabbletool.game.MoveBuffer;
+import scrabbletool.game.ScoreCalculator;
+import scrabbletool.game.board.Board;
+import scrabbletool.game.board.Tile;
+import scrabbletool.game.movegen.MoveGenerator;
+import scrabbletool.game.movegen.TopMoveCollector;
+
+/**
+ * <p>
+ * The benchmark suite. It measures building the lexicon, looking words up in
+ * the GADDAG, updating the move generator's board data, generating moves and
+ * scoring them, over the standard {@link Position}s and racks.
+ * </p>
+ * <p>
+ * Usage: {@code Benchmarks [gametype [filter]]}. The game type defaults to
+ * "scrabble"; if a filter is given, only the benchmarks whose names contain it
+ * are run. One line is printed per benchmark.
+ * </p>
+ * <p>
+ * Before any benchmark is run, the move generator's output on the empty board
+ * is checked, since a generator that misses moves would otherwise just look
+ * fast.
+ * </p>
+ */
+public class Benchmarks {
+  private static final String DEFAULT_GAMETYPE = "scrabble";
+  private static final String DICTIONARY_FILE = "twl06.txt";
+
+  /**
+   * The number of dictionary words skipped between each word sampled for the
+   * lookup benchmarks.
+   */
+  private static final int WORD_SAMPLE_INTERVAL = 16;
+
+  /**
+   * A move handler that adds up the scores of the moves it receives.
+   */
+  private static class ScoreTotaler implements MoveGenerator.MoveHandler {
+    private long total_ = 0;
+
+    @Override
+    public void handleMove(Move move, int score) {
+      total_ += score;
+    }
+  }
+
+  private String filter_;
+
+  private Benchmarks(String filter) {
+    filter_ = filter;
+  }
+
+  /**
+   * The entry point for the benchmark suite.
+   */
+  public static void main(String[] args) throws Exception {
+    String gameType = args.length > 0 ? args[0] : DEFAULT_GAMETYPE;
+    String filter = args.length > 1 ? args[1] : "";
+    Path gameTypeFile = ScrabbleTool.GAMETYPE_FOLDER.resolve(gameType
+                                                             + ScrabbleTool.GAMETYPE_FILE_EXTENSION);
+    Game game = GameFactory.newGame(gameTypeFile);
+    Path dictFile = ScrabbleTool.DICTIONARY_FOLDER.resolve(DICTIONARY_FILE);
+
+    Benchmarks benchmarks = new Benchmarks(filter);
+    checkOpeningMoves(game);
+    System.out.println(Benchmark.Report.getHeader());
+    benchmarks.runLexiconBenchmarks(game, dictFile);
+    for (Position position : Position.ALL)
+      benchmarks.runPositionBenchmarks(game, position);
+  }
+
+  /**
+   * Returns true if and only if any of the given benchmark names matches the
+   * filter, so that the inputs shared by those benchmarks need to be built.
+   */
+  private boolean matchesAny(String... names) {
+    for (String name : names) {
+      if (name.contains(filter_))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Runs the given benchmark and prints its report, if its name matches the
+   * filter.
+   */
+  private void run(Benchmark benchmark) throws Exception {
+    if (benchmark.getName().contains(filter_))
+      System.out.println(benchmark.run());
+  }
+
+  /**
+   * Runs the benchmarks for building the lexicon and for looking up words in
+   * it.
+   */
+  private void runLexiconBenchmarks(Game game, final Path dictFile) throws Exception {
+    final Alphabet alphabet = game.getAlphabet();
+    run(new Benchmark("gaddag.build.object", 1, 3, new Benchmark.Task() {
+      @Override
+      public long run() throws Exception {
+        return GADDAGFactory.newGADDAG(dictFile, alphabet).getRootArc()
+                            .getLetterSet();
+      }
+    }));
+    run(new Benchmark("gaddag.build.minimal", 1, 3, new Benchmark.Task() {
+      @Override
+      public long run() throws Exception {
+        return GADDAGFactory.newMinimalGADDAG(dictFile, alphabet)
+                            .getNumArcs();
+      }
+    }));
+
+    if (!matchesAny("gaddag.lookup.object", "gaddag.lookup.packed"))
+      return;
+    final int[][] words = sampleWords(dictFile, alphabet);
+    final Letter[][] letterWords = new Letter[words.length][];
+    for (int i = 0; i < words.length; i++) {
+      letterWords[i] = new Letter[words[i].length];
+      for (int j = 0; j < words[i].length; j++)
+        letterWords[i][j] = alphabet.getLetter(words[i][j]);
+    }
+
+    final GADDAG gaddag = GADDAGFactory.newGADDAG(dictFile, alphabet);
+    run(new Benchmark("gaddag.lookup.object", 10, 50, new Benchmark.Task() {
+      @Override
+      public long run() {
+        long found = 0;
+        for (Letter[] word : letterWords) {
+          if (containsWord(gaddag, word))
+            found++;
+        }
+        return found;
+      }
+    }));
+
+    final PackedGADDAG packedGADDAG = game.getGADDAG();
+    run(new Benchmark("gaddag.lookup.packed", 10, 50, new Benchmark.Task() {
+      @Override
+      public long run() {
+        long found = 0;
+        for (int[] word : words) {
+          if (containsWord(packedGADDAG, word))
+            found++;
+        }
+        return found;
+      }
+    }));
+  }
+
+  /**
+   * Runs the benchmarks for updating the board data, generating moves and
+   * scoring moves in the given position.
+   */
+  private void runPositionBenchmarks(final Game game, final Position position) throws Exception {
+    final PackedGADDAG gaddag = game.getGADDAG();
+    final Board board = game.getBoard();
+    String name = position.getName();
+
+    // Setting up a position replays every one of its moves through
+    // |DataManager.update|.
+    run(new Benchmark("update." + name, 50, 500, new Benchmark.Task() {
+      @Override
+      public long run() {
+        position.setUp(game, gaddag);
+        return board.getOccupancy(board.getStartRow());
+      }
+    }));
+
+    final MoveGenerator moveGen = position.setUp(game, gaddag);
+    for (String rackText : Position.RACKS) {
+      final List<Tile> rack = Position.parseRack(game.getAlphabet(), rackText);
+      String suffix = name + "." + rackText;
+
+      final ScoreTotaler totaler = new ScoreTotaler();
+      run(new Benchmark("generate.handler." + suffix, 20, 100,
+                        new Benchmark.Task() {
+                          @Override
+                          public long run() {
+                            totaler.total_ = 0;
+                            moveGen.generate(rack, totaler);
+                            return totaler.total_;
+                          }
+                        }));
+
+      final MoveBuffer buffer = new MoveBuffer();
+      run(new Benchmark("generate.buffer." + suffix, 20, 100,
+                        new Benchmark.Task() {
+                          @Override
+                          public long run() {
+                            buffer.clear();
+                            moveGen.generate(rack, buffer);
+                            return buffer.size();
+                          }
+                        }));
+
+      final TopMoveCollector collector = new TopMoveCollector(10);
+      run(new Benchmark("generate.top10." + suffix, 20, 100,
+                        new Benchmark.Task() {
+                          @Override
+                          public long run() {
+                            collector.clear();
+                            moveGen.generate(rack, collector);
+                            return collector.size();
+                          }
+                        }));
+    }
+
+    if (!matchesAny("score.calculator." + name, "score.generator." + name))
+      return;
+    List<Tile> scoredRack = Position.parseRack(game.getAlphabet(),
+                                               Position.RACKS[1]);
+    final List<Move> moves = new ArrayList<Move>(moveGen.generate(scoredRack));
+    run(new Benchmark("score.calculator." + name, 20, 100,
+                      new Benchmark.Task() {
+                        @Override
+                        public long run() {
+                          long total = 0;
+                          for (Move move : moves)
+                            total += ScoreCalculator.calculateScore(board, move);
+                          return total;
+                        }
+                      }));
+    run(new Benchmark("score.generator." + name, 20, 100,
+                      new Benchmark.Task() {
+                        @Override
+                        public long run() {
+                          long total = 0;
+                          for (Move move : moves)
+                            total += moveGen.calculateScore(move);
+                          return total;
+                        }
+                      }));
+  }
+
+  /**
+   * Checks that the opening moves for each standard rack are generated in both
+   * directions. When the start square is on the board's diagonal, every
+   * opening move has a transposed twin, so there must be as many down moves
+   * as across moves.
+   * 
+   * @param game The game to generate the moves in. Its board is cleared.
+   * @throws IllegalStateException If the moves are missing a direction.
+   */
+  private static void checkOpeningMoves(Game game) {
+    MoveGenerator moveGen = Position.EMPTY.setUp(game, game.getGADDAG());
+    Board board = game.getBoard();
+    boolean symmetric = board.getStartRow() == board.getStartCol();
+    for (String rackText : Position.RACKS) {
+      List<Tile> rack = Position.parseRack(game.getAlphabet(), rackText);
+      int numAcross = 0;
+      int numDown = 0;
+      for (Move move : moveGen.generate(rack)) {
+        if (move.isAcross())
+          numAcross++;
+        else
+          numDown++;
+      }
+      if (numAcross == 0 || numDown == 0 || symmetric && numAcross != numDown)
+        throw new IllegalStateException("The opening moves for " + rackText
+                                        + " are wrong: " + numAcross
+                                        + " across and " + numDown
+                                        + " down.");
+    }
+  }
+
+  /**
+   * Returns true if and only if the given word is in the given GADDAG. The
+   * word is looked up along its fully reversed path, which has no delimiter.
+   */
+  private static boolean containsWord(GADDAG gaddag, Letter[] word) {
+    Arc arc = gaddag.getRootArc();
+    for (int i = word.length - 1; i > 0; i--) {
+      arc = gaddag.getArc(arc.getDestination(), word[i]);
+      if (arc == null)
+        return false;
+    }
+    return arc.hasLetter(word[0]);
+  }
+
+  /**
+   * Returns true if and only if the given word, given as letter ordinals, is
+   * in the given packed GADDAG.
+   */
+  private static boolean containsWord(PackedGADDAG gaddag, int[] word) {
+    int arc = gaddag.getRootArc();
+    for (int i = word.length - 1; i > 0; i--) {
+      arc = gaddag.getArc(arc, word[i]);
+      if (arc == PackedGADDAG.NO_ARC)
+        return false;
+    }
+    return gaddag.hasLetter(arc, word[0]);
+  }
+
+  /**
+   * Returns a sample of the words in the given dictionary file, as arrays of
+   * letter ordinals.
+   */
+  private static int[][] sampleWords(Path dictFile, Alphabet alphabet) throws Exception {
+    final List<int[]> words = new ArrayList<int[]>();
+    DictionaryReader reader = new DictionaryReader(alphabet);
+    try (ReadableByteChannel channel = DictionaryReader.open(dictFile)) {
+      reader.read(channel, new DictionaryReader.WordHandler() {
+        private int count_ = 0;
+
+        @Override
+        public void handleWord(byte[] word, int length) throws WordSizeException {
+          if (count_++ % WORD_SAMPLE_INTERVAL != 0 || length < 2)
+            return;
+          int[] ordinals = new int[length];
+          for (int i = 0; i < length; i++)
+            ordinals[i] = word[i];
+          words.add(ordinals);
+        }
+      });
+    }
+    return words.toArray(new int[words.size()][]);
+  }
+}
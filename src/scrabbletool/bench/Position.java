@@ -0,0 +1,185 @@
+package scrabbletool.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import scrabbletool.gaddag.PackedGADDAG;
+import scrabbletool.game.Alphabet;
+import scrabbletool.game.Game;
+import scrabbletool.game.Move;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Board;
+import scrabbletool.game.board.Tile;
+import scrabbletool.game.movegen.MoveGenerator;
+
+/**
+ * <p>
+ * A board position used by the benchmarks, given as the sequence of moves that
+ * leads to it from an empty board.
+ * </p>
+ * <p>
+ * Each move is written as {@code "<A|D> <row> <col> <word>"}, giving the
+ * direction, the square of the word's first letter, and the whole main word,
+ * including any letters already on the board. Lower-case letters are blanks.
+ * </p>
+ */
+public class Position {
+  /**
+   * The empty board.
+   */
+  public static final Position EMPTY = new Position("empty");
+
+  /**
+   * A position eight moves into a game.
+   */
+  public static final Position MIDGAME = new Position("midgame",
+                                                      "A 7 3 FOETAL",
+                                                      "A 8 2 BEYS",
+                                                      "A 9 0 AYIN",
+                                                      "D 8 0 NAEVOID",
+                                                      "A 10 3 DIGITS",
+                                                      "A 9 6 MAIM",
+                                                      "A 8 9 HOAX",
+                                                      "A 7 11 LACE");
+
+  /**
+   * A crowded position near the end of the same game.
+   */
+  public static final Position ENDGAME = new Position("endgame",
+                                                      "A 7 3 FOETAL",
+                                                      "A 8 2 BEYS",
+                                                      "A 9 0 AYIN",
+                                                      "D 8 0 NAEVOID",
+                                                      "A 10 3 DIGITS",
+                                                      "A 9 6 MAIM",
+                                                      "A 8 9 HOAX",
+                                                      "A 7 11 LACE",
+                                                      "D 4 4 ANNOY",
+                                                      "A 9 11 CEE",
+                                                      "A 8 9 HOAXER",
+                                                      "D 6 12 WAXEN",
+                                                      "A 10 10 WEN",
+                                                      "A 11 4 FOB",
+                                                      "A 11 9 ROD",
+                                                      "D 1 5 RILLE",
+                                                      "A 2 1 HOURI",
+                                                      "D 0 3 EQUIP",
+                                                      "D 1 1 SHRIVeN",
+                                                      "A 0 5 GUTTA",
+                                                      "A 1 9 DAIKeR",
+                                                      "D 0 11 JIGS",
+                                                      "D 0 0 ZA",
+                                                      "D 0 14 TROUT");
+
+  /**
+   * All of the standard positions.
+   */
+  public static final Position[] ALL = { EMPTY, MIDGAME, ENDGAME };
+
+  /**
+   * The standard racks, with no, one and two blanks.
+   */
+  public static final String[] RACKS = { "AEINRST", "AEIRST?", "EIRST??" };
+
+  private String name_;
+  private String[] moves_;
+
+  /**
+   * Creates a new position.
+   * 
+   * @param name The name of the position.
+   * @param moves The moves leading to the position, in the notation described
+   *          above.
+   */
+  public Position(String name, String... moves) {
+    name_ = name;
+    moves_ = moves;
+  }
+
+  /**
+   * Returns the name of this position.
+   */
+  public String getName() {
+    return name_;
+  }
+
+  /**
+   * Removes every tile from the game's board, then plays the moves of this
+   * position on it.
+   * 
+   * @param game The game whose board to set up.
+   * @param gaddag The GADDAG to generate moves with.
+   * @return A move generator for the resulting position.
+   */
+  public MoveGenerator setUp(Game game, PackedGADDAG gaddag) {
+    Board board = game.getBoard();
+    clear(board);
+    MoveGenerator moveGen = new MoveGenerator(game, gaddag);
+    for (String move : moves_) {
+      Move newMove = parseMove(board, game.getAlphabet(), move);
+      board.playMove(newMove);
+      moveGen.update(newMove);
+    }
+    return moveGen;
+  }
+
+  /**
+   * Removes every tile from the given board.
+   * 
+   * @param board The board to clear.
+   */
+  public static void clear(Board board) {
+    for (int row = 0; row < board.size(); row++) {
+      for (int col = 0; col < board.size(); col++)
+        board.get(row, col).placeTile(null);
+    }
+  }
+
+  /**
+   * Returns the tiles of the given rack.
+   * 
+   * @param alphabet The alphabet of the game.
+   * @param rack The rack, as a string of letters with "?" for blanks.
+   */
+  public static List<Tile> parseRack(Alphabet alphabet, String rack) {
+    List<Tile> tiles = new ArrayList<Tile>(rack.length());
+    for (int i = 0; i < rack.length(); i++) {
+      String text = rack.substring(i, i + 1);
+      if (text.equals("?"))
+        tiles.add(new Blank());
+      else
+        tiles.add(new Tile(alphabet.getLetter(text)));
+    }
+    return tiles;
+  }
+
+  /**
+   * Returns the move described by the given string. Letters of the word that
+   * are already on the board are not part of the move.
+   */
+  private static Move parseMove(Board board, Alphabet alphabet, String move) {
+    String[] fields = move.split(" ");
+    boolean across = fields[0].equals("A");
+    int row = Integer.parseInt(fields[1]);
+    int col = Integer.parseInt(fields[2]);
+    String word = fields[3];
+
+    // Treat down moves as across moves on the transposed board.
+    Board alignedBoard = across ? board : board.transpose();
+    int line = across ? row : col;
+    int start = across ? col : row;
+    Move newMove = new Move(across, line);
+    for (int i = 0; i < word.length(); i++) {
+      if (alignedBoard.hasTile(line, start + i))
+        continue;
+      String text = word.substring(i, i + 1);
+      String upperText = text.toUpperCase();
+      Tile tile;
+      if (text.equals(upperText))
+        tile = new Tile(alphabet.getLetter(text));
+      else
+        tile = new Blank(alphabet.getLetter(upperText));
+      newMove.addTile(tile, start + i);
+    }
+    return newMove;
+  }
+}
@@ -1,17 +1,15 @@
 package scrabbletool.gaddag;
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.TreeSet;
 import scrabbletool.game.Letter;
 
 /**
  * An edge in the GADDAG graph. An {@code Arc} has a destination {@link Node}
- * and a letter set for determining valid words.
+ * and a letter set for determining valid words. The letter set is stored as a
+ * bitmask of letter ordinals.
  */
 public class Arc {
   private Node destination_;
-  private Set<Letter> letterSet_;
+  private long letterSet_;
 
   /**
    * Constructs a new arc pointing at the given destination node.
@@ -20,7 +18,7 @@ public class Arc {
    */
   public Arc(Node destination) {
     destination_ = destination;
-    letterSet_ = new TreeSet<Letter>();
+    letterSet_ = 0;
   }
 
   /**
@@ -30,14 +28,16 @@ public class Arc {
    * @param letter The letter to test.
    */
   public boolean hasLetter(Letter letter) {
-    return letterSet_.contains(letter);
+    return (letterSet_ & letter.getMask()) != 0;
   }
 
   /**
-   * Returns an unmodifiable view of the letter set on this arc.
+   * Returns the letter set on this arc as a bitmask of letter ordinals.
+   * 
+   * @see scrabbletool.game.Alphabet#getLetters(long)
    */
-  public Set<Letter> getLetterSet() {
-    return Collections.unmodifiableSet(letterSet_);
+  public long getLetterSet() {
+    return letterSet_;
   }
 
   /**
@@ -53,6 +53,6 @@ public class Arc {
    * @param letter The letter to add.
    */
   void addLetter(Letter letter) {
-    letterSet_.add(letter);
+    letterSet_ |= letter.getMask();
   }
 }
@@ -11,6 +11,7 @@ import scrabbletool.game.Letter;
  */
 class ArcLetter implements Comparable<ArcLetter> {
   private Letter _letter;
+  private int _ordinal;
 
   /**
    * Constructs a new arc letter for the given Scrabble letter.
@@ -18,7 +19,15 @@ class ArcLetter implements Comparable<ArcLetter> {
    * @param letter
    */
   public ArcLetter(Letter letter) {
+    this(letter, letter.getOrdinal());
+  }
+
+  /**
+   * Constructs a new arc letter with the given Scrabble letter and ordinal.
+   */
+  protected ArcLetter(Letter letter, int ordinal) {
     _letter = letter;
+    _ordinal = ordinal;
   }
 
   /**
@@ -29,14 +38,21 @@ class ArcLetter implements Comparable<ArcLetter> {
   }
 
   /**
-   * Compares this arc letter to another. The comparison is such that the
-   * {@link Delimiter} symbol is greater than any other letter (and equal to
+   * Returns the ordinal of this arc letter. This is the ordinal of the
+   * underlying Scrabble letter, or {@link PackedGADDAG#DELIMITER_ORDINAL} for
+   * the {@link Delimiter}.
+   */
+  public int getOrdinal() {
+    return _ordinal;
+  }
+
+  /**
+   * Compares this arc letter to another by ordinal. The comparison is such that
+   * the {@link Delimiter} symbol is greater than any other letter (and equal to
    * itself).
    */
   @Override
   public int compareTo(ArcLetter other) {
-    if (other instanceof Delimiter)
-      return -1;
-    return _letter.compareTo(other._letter);
+    return Integer.compare(_ordinal, other._ordinal);
   }
 }
@@ -10,13 +10,6 @@ class Delimiter extends ArcLetter {
    * Creates a new delimiter.
    */
   public Delimiter() {
-    super(null);
-  }
-
-  @Override
-  public int compareTo(ArcLetter other) {
-    if (other instanceof Delimiter)
-      return 0;
-    return 1;
+    super(null, PackedGADDAG.DELIMITER_ORDINAL);
   }
 }
@@ -0,0 +1,248 @@
+package scrabbletool.gaddag;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import scrabbletool.gaddag.GADDAGFactory.WordSizeException;
+import scrabbletool.game.Alphabet;
+import scrabbletool.game.Letter;
+
+/**
+ * <p>
+ * Streams the words of a dictionary file, one per line, as arrays of letter
+ * ordinals.
+ * </p>
+ * <p>
+ * The dictionary is read in fixed-size chunks, and each byte is translated to
+ * a letter ordinal through a lookup table, so neither the file's contents nor
+ * any per-character objects are ever materialized. The file is UTF-8: letters
+ * outside ASCII are decoded from their multi-byte sequences and looked up by
+ * binary search in a small sorted table of code points. Characters that are not letters of the alphabet (such as
+ * carriage returns) are skipped. Gzip-compressed input is detected and
+ * decompressed transparently.
+ * </p>
+ */
+public class DictionaryReader {
+  /**
+   * Receives the words read by a {@link DictionaryReader}.
+   */
+  public interface WordHandler {
+    /**
+     * Handles a single word.
+     * 
+     * @param word A buffer containing the ordinals of the word's letters. The
+     *          buffer is reused for the next word, so it must be copied if it
+     *          is to be kept.
+     * @param length The number of letters in the word.
+     * @throws WordSizeException If the word is too short.
+     */
+    public void handleWord(byte[] word, int length) throws WordSizeException;
+  }
+
+  private static final int CHUNK_SIZE = 1 << 16;
+  private static final byte SKIPPED_BYTE = -1;
+  private static final byte NEWLINE = '\n';
+
+  private byte[] ordinalTable_;
+  private int[] nonAsciiCodePoints_;
+  private byte[] nonAsciiOrdinals_;
+  private Alphabet alphabet_;
+
+  /**
+   * Creates a reader for dictionaries using the given alphabet.
+   * 
+   * @param alphabet The alphabet used by the dictionary.
+   * @throws IllegalArgumentException If a letter of the alphabet is not a
+   *           single character, since the reader could not tell it apart from
+   *           a sequence of letters.
+   */
+  public DictionaryReader(Alphabet alphabet) {
+    alphabet_ = alphabet;
+    ordinalTable_ = new byte[128];
+    Arrays.fill(ordinalTable_, SKIPPED_BYTE);
+    // Each non-ASCII letter is packed as its code point followed by its
+    // ordinal, so that sorting the packed values sorts the letters by code
+    // point.
+    long[] nonAsciiLetters = new long[alphabet.size()];
+    int numNonAscii = 0;
+    for (Letter letter : alphabet.getLetters()) {
+      String text = letter.getText();
+      if (text.codePointCount(0, text.length()) != 1)
+        throw new IllegalArgumentException("Cannot read dictionaries for the "
+                                           + "letter \"" + text + "\". "
+                                           + "Letters must be single "
+                                           + "characters.");
+      int codePoint = text.codePointAt(0);
+      if (codePoint < 0x80)
+        ordinalTable_[codePoint] = (byte) letter.getOrdinal();
+      else
+        nonAsciiLetters[numNonAscii++] = (long) codePoint << 8
+                                         | letter.getOrdinal();
+    }
+    Arrays.sort(nonAsciiLetters, 0, numNonAscii);
+    nonAsciiCodePoints_ = new int[numNonAscii];
+    nonAsciiOrdinals_ = new byte[numNonAscii];
+    for (int i = 0; i < numNonAscii; i++) {
+      nonAsciiCodePoints_[i] = (int) (nonAsciiLetters[i] >>> 8);
+      nonAsciiOrdinals_[i] = (byte) nonAsciiLetters[i];
+    }
+  }
+
+  /**
+   * Opens a dictionary file for reading, decompressing it if it is
+   * gzip-compressed.
+   * 
+   * @param dictFile The dictionary file.
+   * @throws IOException If there is a problem opening the file.
+   */
+  public static ReadableByteChannel open(Path dictFile) throws IOException {
+    FileChannel channel = FileChannel.open(dictFile, StandardOpenOption.READ);
+    try {
+      ByteBuffer magic = readMagic(channel);
+      channel.position(0);
+      // Uncompressed files can be read directly from the file channel.
+      if (!isGzipMagic(magic))
+        return channel;
+      return Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel),
+                                                     CHUNK_SIZE));
+    } catch (IOException | RuntimeException e) {
+      // The caller never sees the channel, so it has to be closed here.
+      try {
+        channel.close();
+      } catch (IOException closeException) {
+        e.addSuppressed(closeException);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a channel that yields the decompressed contents of the given
+   * channel if it begins with the gzip magic number, or the contents of the
+   * given channel unchanged otherwise.
+   * 
+   * @param channel The channel to read from.
+   * @throws IOException If there is a problem reading from the channel.
+   */
+  public static ReadableByteChannel decompress(ReadableByteChannel channel) throws IOException {
+    // Peek at the first two bytes, then replay them in front of the rest of
+    // the channel.
+    ByteBuffer magic = readMagic(channel);
+    InputStream stream = new SequenceInputStream(new ByteArrayInputStream(magic.array(),
+                                                                          0,
+                                                                          magic.limit()),
+                                                 Channels.newInputStream(channel));
+    if (isGzipMagic(magic))
+      stream = new GZIPInputStream(stream, CHUNK_SIZE);
+    return Channels.newChannel(stream);
+  }
+
+  /**
+   * Reads the first two bytes of the given channel.
+   */
+  private static ByteBuffer readMagic(ReadableByteChannel channel) throws IOException {
+    ByteBuffer magic = ByteBuffer.allocate(2);
+    while (magic.hasRemaining() && channel.read(magic) >= 0)
+      continue;
+    magic.flip();
+    return magic;
+  }
+
+  /**
+   * Returns true if and only if the given bytes are the gzip magic number.
+   */
+  private static boolean isGzipMagic(ByteBuffer magic) {
+    return magic.limit() == 2 && (magic.get(0) & 0xFF) == 0x1F
+           && (magic.get(1) & 0xFF) == 0x8B;
+  }
+
+  /**
+   * Reads every word from the given channel, passing each to the given
+   * handler. The channel is not closed.
+   * 
+   * @param channel The channel to read from.
+   * @param handler The handler to receive the words.
+   * @throws IOException If there is a problem reading from the channel.
+   * @throws WordSizeException If the handler rejects a word.
+   */
+  public void read(ReadableByteChannel channel, WordHandler handler) throws IOException,
+                                                                    WordSizeException {
+    ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+    byte[] bytes = chunk.array();
+    byte[] word = new byte[64];
+    int wordLength = 0;
+    boolean lineHasBytes = false;
+    // The partly decoded character, when the bytes of a multi-byte character
+    // are being read.
+    int codePoint = 0;
+    int numPendingBytes = 0;
+
+    while (channel.read(chunk) >= 0) {
+      int end = chunk.position();
+      for (int i = 0; i < end; i++) {
+        byte b = bytes[i];
+        if (b == NEWLINE) {
+          handler.handleWord(word, wordLength);
+          wordLength = 0;
+          lineHasBytes = false;
+          numPendingBytes = 0;
+          continue;
+        }
+        lineHasBytes = true;
+        byte ordinal;
+        if (b >= 0) {
+          ordinal = ordinalTable_[b];
+          numPendingBytes = 0;
+        } else if ((b & 0xC0) != 0x80) {
+          // This is the first byte of a multi-byte character, whose high bits
+          // give the number of bytes that follow.
+          int lead = b & 0xFF;
+          numPendingBytes = lead >= 0xF0 ? 3 : lead >= 0xE0 ? 2 : 1;
+          codePoint = lead & (0x3F >> numPendingBytes);
+          continue;
+        } else {
+          // This is a continuation byte. Stray ones are skipped.
+          if (numPendingBytes == 0)
+            continue;
+          codePoint = (codePoint << 6) | (b & 0x3F);
+          if (--numPendingBytes > 0)
+            continue;
+          int index = Arrays.binarySearch(nonAsciiCodePoints_, codePoint);
+          ordinal = index < 0 ? SKIPPED_BYTE : nonAsciiOrdinals_[index];
+        }
+        if (ordinal == SKIPPED_BYTE)
+          continue;
+        if (wordLength == word.length)
+          word = Arrays.copyOf(word, 2 * word.length);
+        word[wordLength++] = ordinal;
+      }
+      chunk.clear();
+    }
+
+    // The last line may not be terminated by a newline.
+    if (lineHasBytes)
+      handler.handleWord(word, wordLength);
+  }
+
+  /**
+   * Returns the text of the given word, for use in error messages.
+   * 
+   * @param word The ordinals of the word's letters.
+   * @param length The number of letters in the word.
+   */
+  public String wordToString(byte[] word, int length) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++)
+      text.append(alphabet_.getLetter(word[i]).getText());
+    return text.toString();
+  }
+}
@@ -1,9 +1,13 @@
 package scrabbletool.gaddag;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 import scrabbletool.game.Letter;
 
 /**
@@ -19,14 +23,15 @@ public class GADDAG {
   public static final ArcLetter DELIMITER = new Delimiter();
 
   private Arc rootArc_;
-  private Map<Letter, ArcLetter> alphabetMap_;
+  private ArcLetter[] arcLetters_;
+  private int numWords_;
 
   /**
    * Creates a new, empty GADDAG.
    */
   GADDAG() {
     rootArc_ = new Arc(new Node());
-    alphabetMap_ = new TreeMap<Letter, ArcLetter>();
+    arcLetters_ = new ArcLetter[0];
   }
 
   /**
@@ -43,7 +48,36 @@ public class GADDAG {
    * @param letter The letter for the arc to find.
    */
   public Arc getArc(Node node, Letter letter) {
-    return node.getArc(alphabetMap_.get(letter));
+    int ordinal = letter.getOrdinal();
+    if (ordinal >= arcLetters_.length || arcLetters_[ordinal] == null)
+      return null;
+    return node.getArc(arcLetters_[ordinal]);
+  }
+
+  /**
+   * Returns the number of words that have been added to the GADDAG.
+   */
+  int getNumWords() {
+    return numWords_;
+  }
+
+  /**
+   * Returns the number of distinct nodes in the GADDAG. This walks the whole
+   * graph, so it is slow.
+   */
+  int getNumNodes() {
+    Set<Node> visited;
+    visited = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+    Deque<Node> queue = new ArrayDeque<Node>();
+    visited.add(rootArc_.getDestination());
+    queue.add(rootArc_.getDestination());
+    while (!queue.isEmpty()) {
+      for (Arc arc : queue.removeFirst().getArcs().values()) {
+        if (visited.add(arc.getDestination()))
+          queue.add(arc.getDestination());
+      }
+    }
+    return visited.size();
   }
 
   /**
@@ -52,6 +86,7 @@ public class GADDAG {
    * @param word The word to add.
    */
   void addWord(List<Letter> word) {
+    numWords_++;
     int wordSize = word.size();
 
     // Convert the word to a sequence of ArcLetters, prefixed by the delimiter.
@@ -86,12 +121,15 @@ public class GADDAG {
     List<ArcLetter> gaddagWord = new ArrayList<ArcLetter>(word.size() + 1);
     gaddagWord.add(DELIMITER);
     for (Letter letter : word) {
-      // Get the ArcLetter corresponding to this Letter from the alphabet map.
-      ArcLetter gaddagLetter = alphabetMap_.get(letter);
+      // Get the ArcLetter corresponding to this Letter, indexed by ordinal.
+      int ordinal = letter.getOrdinal();
+      if (ordinal >= arcLetters_.length)
+        arcLetters_ = Arrays.copyOf(arcLetters_, ordinal + 1);
+      ArcLetter gaddagLetter = arcLetters_[ordinal];
       if (gaddagLetter == null) {
-        // If one was not found, create one and add it to the map.
+        // If one was not found, create one.
         gaddagLetter = new ArcLetter(letter);
-        alphabetMap_.put(letter, gaddagLetter);
+        arcLetters_[ordinal] = gaddagLetter;
       }
       gaddagWord.add(gaddagLetter);
     }
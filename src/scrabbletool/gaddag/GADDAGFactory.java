@@ -1,11 +1,11 @@
 package scrabbletool.gaddag;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import scrabbletool.game.Alphabet;
 import scrabbletool.game.Letter;
 
@@ -25,49 +25,178 @@ public class GADDAGFactory {
     public WordSizeException(List<Letter> word) {
       super("Cannot add " + word + " to dictionary. Word length must be >= 2.");
     }
+
+    public WordSizeException(String word) {
+      super("Cannot add \"" + word
+            + "\" to dictionary. Word length must be >= 2.");
+    }
   }
 
   /**
    * Instantiates a new GADDAG.
    * 
    * @param dictFile A text file containing a list of words to add, separated by
-   *          newlines.
+   *          newlines. The file may be gzip-compressed.
    * @param alphabet The alphabet used by the dictionary.
    * @return The newly-created GADDAG.
    * @throws IOException If there is a problem reading the dictionary file.
    * @throws WordSizeException If the dictionary file contains a word whose
    *           length is less than 2.
    */
-  public static GADDAG newGADDAG(Path dictFile, Alphabet alphabet) throws IOException,
-                                                                  WordSizeException {
-    List<String> words = Files.readAllLines(dictFile, StandardCharsets.UTF_8);
-
-    GADDAG gaddag = new GADDAG();
-    for (int i = 0; i < words.size(); i++) {
-      List<Letter> letterList = letterListFromString(words.get(i), alphabet);
-      if (letterList.size() < 2)
-        throw new WordSizeException(letterList);
-      gaddag.addWord(letterList);
+  public static GADDAG newGADDAG(Path dictFile, final Alphabet alphabet) throws IOException,
+                                                                        WordSizeException {
+    LexiconBuildEvent event = new LexiconBuildEvent();
+    event.begin();
+    final GADDAG gaddag = new GADDAG();
+    readDictionary(dictFile, alphabet, new DictionaryReader.WordHandler() {
+      @Override
+      public void handleWord(byte[] word, int length) {
+        List<Letter> letterList = new ArrayList<Letter>(length);
+        for (int i = 0; i < length; i++)
+          letterList.add(alphabet.getLetter(word[i]));
+        gaddag.addWord(letterList);
+      }
+    });
+    if (event.shouldCommit()) {
+      event.dictionary = dictFile.toString();
+      event.minimal = false;
+      event.words = gaddag.getNumWords();
+      event.nodes = gaddag.getNumNodes();
+      event.commit();
     }
     return gaddag;
   }
 
   /**
-   * Creates a list of {@link Letter}s from a dictionary string using the given
-   * alphabet.
+   * Instantiates a new {@link PackedGADDAG}. This is equivalent to packing the
+   * result of {@link #newGADDAG}.
+   * 
+   * @param dictFile A text file containing a list of words to add, separated by
+   *          newlines. The file may be gzip-compressed.
+   * @param alphabet The alphabet used by the dictionary.
+   * @return The newly-created packed GADDAG.
+   * @throws IOException If there is a problem reading the dictionary file.
+   * @throws WordSizeException If the dictionary file contains a word whose
+   *           length is less than 2.
+   */
+  public static PackedGADDAG newPackedGADDAG(Path dictFile, Alphabet alphabet) throws IOException,
+                                                                              WordSizeException {
+    return PackedGADDAG.pack(newGADDAG(dictFile, alphabet), alphabet);
+  }
+
+  /**
+   * Instantiates a new, fully minimized {@link PackedGADDAG}. The result
+   * accepts the same words as {@link #newPackedGADDAG}, but has far fewer
+   * nodes, since equivalent nodes are merged across all words.
+   * 
+   * @param dictFile A text file containing a list of words to add, separated by
+   *          newlines. The file may be gzip-compressed.
+   * @param alphabet The alphabet used by the dictionary.
+   * @return The newly-created packed GADDAG.
+   * @throws IOException If there is a problem reading the dictionary file.
+   * @throws WordSizeException If the dictionary file contains a word whose
+   *           length is less than 2.
+   */
+  public static PackedGADDAG newMinimalGADDAG(Path dictFile, Alphabet alphabet) throws IOException,
+                                                                               WordSizeException {
+    LexiconBuildEvent event = new LexiconBuildEvent();
+    event.begin();
+    MinimalGADDAGBuilder builder = newMinimalGADDAGBuilder(dictFile, alphabet);
+    PackedGADDAG gaddag = builder.build(alphabet);
+    commitMinimalBuildEvent(event, dictFile, builder);
+    return gaddag;
+  }
+
+  /**
+   * Instantiates a new, fully minimized {@link PackedGADDAG}, building the
+   * subgraph for each leading letter in parallel on the given pool. The result
+   * is identical to that of {@link #newMinimalGADDAG(Path, Alphabet)}.
    * 
-   * @param word The dictionary string.
-   * @param alphabet The alphabet to use.
+   * @param dictFile A text file containing a list of words to add, separated by
+   *          newlines. The file may be gzip-compressed.
+   * @param alphabet The alphabet used by the dictionary.
+   * @param pool The pool to build on.
+   * @return The newly-created packed GADDAG.
+   * @throws IOException If there is a problem reading the dictionary file.
+   * @throws WordSizeException If the dictionary file contains a word whose
+   *           length is less than 2.
+   */
+  public static PackedGADDAG newMinimalGADDAG(Path dictFile,
+                                              Alphabet alphabet,
+                                              ForkJoinPool pool) throws IOException,
+                                                                WordSizeException {
+    LexiconBuildEvent event = new LexiconBuildEvent();
+    event.begin();
+    MinimalGADDAGBuilder builder = newMinimalGADDAGBuilder(dictFile, alphabet);
+    PackedGADDAG gaddag = builder.build(alphabet, pool);
+    commitMinimalBuildEvent(event, dictFile, builder);
+    return gaddag;
+  }
+
+  /**
+   * Records the build of a minimal GADDAG, if the event is being recorded.
+   * 
+   * @param event The event, which was begun before the dictionary was read.
+   * @param dictFile The dictionary file.
+   * @param builder The builder that built the GADDAG.
+   */
+  private static void commitMinimalBuildEvent(LexiconBuildEvent event,
+                                              Path dictFile,
+                                              MinimalGADDAGBuilder builder) {
+    if (event.shouldCommit()) {
+      event.dictionary = dictFile.toString();
+      event.minimal = true;
+      event.words = builder.getNumWords();
+      event.nodes = builder.getNumNodes();
+      event.commit();
+    }
+  }
+
+  /**
+   * Creates a {@link MinimalGADDAGBuilder} containing the words in the given
+   * dictionary file.
+   * 
+   * @param dictFile The dictionary file.
+   * @param alphabet The alphabet used by the dictionary.
+   */
+  private static MinimalGADDAGBuilder newMinimalGADDAGBuilder(Path dictFile,
+                                                              Alphabet alphabet) throws IOException,
+                                                                                WordSizeException {
+    final MinimalGADDAGBuilder builder = new MinimalGADDAGBuilder(alphabet.size());
+    readDictionary(dictFile, alphabet, new DictionaryReader.WordHandler() {
+      @Override
+      public void handleWord(byte[] word, int length) {
+        builder.addWord(word, length);
+      }
+    });
+    return builder;
+  }
+
+  /**
+   * Streams the words of a dictionary file to the given handler, rejecting any
+   * word whose length is less than 2.
+   * 
+   * @param dictFile The dictionary file, which may be gzip-compressed.
+   * @param alphabet The alphabet used by the dictionary.
+   * @param handler The handler to receive the words.
+   * @throws IOException If there is a problem reading the dictionary file.
+   * @throws WordSizeException If the dictionary file contains a word whose
+   *           length is less than 2.
    */
-  private static List<Letter> letterListFromString(String word,
-                                                   Alphabet alphabet) {
-    // TODO: This currently just extracts ASCII characters.
-    List<Letter> letterList = new ArrayList<Letter>(word.length());
-    for (char c : word.toCharArray()) {
-      Letter letter = alphabet.getLetter(String.valueOf(c));
-      if (letter != null)
-        letterList.add(letter);
+  private static void readDictionary(Path dictFile,
+                                     Alphabet alphabet,
+                                     final DictionaryReader.WordHandler handler) throws IOException,
+                                                                                WordSizeException {
+    final DictionaryReader reader = new DictionaryReader(alphabet);
+    try (ReadableByteChannel channel = DictionaryReader.open(dictFile)) {
+      reader.read(channel, new DictionaryReader.WordHandler() {
+        @Override
+        public void handleWord(byte[] word, int length) throws WordSizeException {
+          if (length < 2)
+            throw new WordSizeException(reader.wordToString(word, length));
+          handler.handleWord(word, length);
+        }
+      });
     }
-    return letterList;
   }
 }
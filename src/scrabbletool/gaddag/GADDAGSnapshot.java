@@ -0,0 +1,153 @@
+package scrabbletool.gaddag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import scrabbletool.game.Alphabet;
+
+/**
+ * <p>
+ * Reads and writes {@link PackedGADDAG}s as binary snapshot files, so that a
+ * dictionary only has to be built once.
+ * </p>
+ * <p>
+ * A snapshot consists of a fixed-size header followed by the packed arcs,
+ * stored little-endian exactly as they are laid out in memory. Snapshots are
+ * opened through a read-only memory mapping, so lookups run directly off the
+ * mapped pages without any deserialization. The header layout is:
+ * </p>
+ * 
+ * <pre>
+ * int   magic number ("GDAG")
+ * int   format version
+ * int   CRC-32 of the alphabet's letter texts
+ * int   number of arcs
+ * long  CRC-32 of the arc data
+ * </pre>
+ */
+public class GADDAGSnapshot {
+  /**
+   * Thrown when a snapshot file is corrupt, was written by an incompatible
+   * version, or does not match the requested alphabet.
+   */
+  public static class SnapshotFormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotFormatException(Path file, String problem) {
+      super("Cannot read GADDAG snapshot " + file + ": " + problem + ".");
+    }
+  }
+
+  /**
+   * The version of the snapshot format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  private static final int MAGIC = 0x47444147;
+  private static final int HEADER_SIZE = 24;
+  private static final int WRITE_CHUNK_SIZE = 1 << 16;
+
+  /**
+   * Writes the given GADDAG to a snapshot file. The file is written under a
+   * temporary name and then moved into place, so readers never observe a
+   * partially-written snapshot.
+   * 
+   * @param gaddag The GADDAG to write.
+   * @param alphabet The alphabet used by the GADDAG.
+   * @param file The snapshot file to create or replace.
+   * @throws IOException If there is a problem writing the file.
+   */
+  public static void write(PackedGADDAG gaddag, Alphabet alphabet, Path file) throws IOException {
+    LongBuffer arcs = gaddag.getArcs();
+    CRC32 arcChecksum = new CRC32();
+    ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK_SIZE)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempFile,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      // Write the arcs first, leaving room for the header, since the header
+      // contains the checksum of the arcs.
+      channel.position(HEADER_SIZE);
+      while (arcs.hasRemaining()) {
+        while (arcs.hasRemaining() && chunk.remaining() >= Long.BYTES)
+          chunk.putLong(arcs.get());
+        chunk.flip();
+        arcChecksum.update(chunk.duplicate());
+        while (chunk.hasRemaining())
+          channel.write(chunk);
+        chunk.clear();
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(alphabet.getChecksum());
+      header.putInt(gaddag.getNumArcs());
+      header.putLong(arcChecksum.getValue());
+      header.flip();
+      channel.position(0);
+      while (header.hasRemaining())
+        channel.write(header);
+      channel.force(true);
+    }
+    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Opens a snapshot file through a read-only memory mapping.
+   * 
+   * @param file The snapshot file to open.
+   * @param alphabet The alphabet that the snapshot must have been written
+   *          with.
+   * @return A GADDAG backed by the mapped file.
+   * @throws IOException If there is a problem reading the file.
+   * @throws SnapshotFormatException If the file is not a valid snapshot for
+   *           the given alphabet.
+   */
+  public static PackedGADDAG open(Path file, Alphabet alphabet) throws IOException,
+                                                               SnapshotFormatException {
+    MappedByteBuffer mapping;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE)
+        throw new SnapshotFormatException(file, "file is truncated");
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+    // Validate the header.
+    if (mapping.getInt() != MAGIC)
+      throw new SnapshotFormatException(file, "not a GADDAG snapshot");
+    int version = mapping.getInt();
+    if (version != VERSION)
+      throw new SnapshotFormatException(file, "unsupported version " + version);
+    if (mapping.getInt() != alphabet.getChecksum())
+      throw new SnapshotFormatException(file, "alphabet mismatch");
+    int numArcs = mapping.getInt();
+    long expectedChecksum = mapping.getLong();
+    if (numArcs < 1 || mapping.remaining() != (long) numArcs * Long.BYTES)
+      throw new SnapshotFormatException(file, "file is truncated");
+
+    // Validate the arc data.
+    ByteBuffer arcBytes = mapping.slice().order(ByteOrder.LITTLE_ENDIAN);
+    CRC32 arcChecksum = new CRC32();
+    arcChecksum.update(arcBytes.duplicate());
+    if (arcChecksum.getValue() != expectedChecksum)
+      throw new SnapshotFormatException(file, "checksum mismatch");
+
+    return new PackedGADDAG(arcBytes.asLongBuffer(), alphabet);
+  }
+}
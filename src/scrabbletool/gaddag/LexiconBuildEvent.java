@@ -0,0 +1,29 @@
+package scrabbletool.gaddag;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for building a GADDAG from a dictionary file. Its
+ * fields are only filled in if the event is being recorded.
+ */
+@Name("scrabbletool.LexiconBuild")
+@Label("Lexicon Build")
+@Category("ScrabbleTool")
+@Description("Building a GADDAG from a dictionary file")
+final class LexiconBuildEvent extends jdk.jfr.Event {
+  @Label("Dictionary")
+  String dictionary;
+
+  @Label("Minimal")
+  @Description("Whether equivalent nodes were merged across all words")
+  boolean minimal;
+
+  @Label("Words")
+  int words;
+
+  @Label("Nodes")
+  int nodes;
+}
@@ -0,0 +1,492 @@
+package scrabbletool.gaddag;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import scrabbletool.game.Alphabet;
+
+/**
+ * <p>
+ * Builds a fully minimized {@link PackedGADDAG}, in which every pair of nodes
+ * with identical outgoing arcs is merged, no matter which words they came
+ * from. (The {@link GADDAG} builder only merges nodes along the paths of a
+ * single word.)
+ * </p>
+ * <p>
+ * Words are first collected as arrays of letter ordinals. The builder then
+ * generates every GADDAG path of every word and inserts the paths in sorted
+ * order, using the incremental algorithm of Daciuk et al.: once the insertion
+ * point leaves a subtree, that subtree can never change again, so its nodes
+ * are frozen immediately and looked up in a <em>register</em> of the distinct
+ * nodes seen so far. The paths are generated and sorted one leading letter at
+ * a time, so only a fraction of them are held in memory at once.
+ * </p>
+ * <p>
+ * Since the letter set of a path's final letter is stored on the arc leading
+ * into a node, a node is identified entirely by its outgoing arcs, each of
+ * which is a triple of letter ordinal, letter set and destination node.
+ * </p>
+ * <p>
+ * The paths for each leading letter form the subgraph below one root arc, so
+ * the subgraphs may also be built independently on a {@link ForkJoinPool}
+ * and then merged into a single register. Because the minimal graph is unique
+ * and the final layout depends only on the graph's structure, both ways of
+ * building produce identical arc arrays.
+ * </p>
+ */
+class MinimalGADDAGBuilder {
+  private static final int DELIMITER = PackedGADDAG.DELIMITER_ORDINAL;
+  private static final long CHILD_MASK = -1L << PackedGADDAG.CHILD_SHIFT;
+
+  /**
+   * A register of frozen nodes. Node n's arcs are stored in
+   * {@code arcPool_[nodeStarts_[n]]} through
+   * {@code arcPool_[nodeStarts_[n + 1] - 1]}, in the packed arc format, but
+   * with node numbers in place of arc indices. Node 0 is the node without
+   * outgoing arcs. Since a node can only be registered after its children,
+   * children always have lower numbers than their parents.
+   */
+  private static class NodeRegister {
+    private long[] arcPool_;
+    private int poolSize_;
+    private int[] nodeStarts_;
+    private int numNodes_;
+    private int[] table_;
+
+    /**
+     * Creates an empty register.
+     */
+    public NodeRegister() {
+      arcPool_ = new long[1024];
+      poolSize_ = 0;
+      nodeStarts_ = new int[1024];
+      numNodes_ = 1;
+      table_ = new int[1024];
+    }
+
+    /**
+     * Returns the number of the registered node with the given arcs,
+     * registering a new node if no such node exists.
+     * 
+     * @param arcs The node's arcs, with node numbers as destinations.
+     * @param numArcs The number of arcs in {@code arcs} to use.
+     */
+    public int register(long[] arcs, int numArcs) {
+      if (numArcs == 0)
+        return 0;
+
+      // Tentatively append the node to the pool.
+      if (poolSize_ + numArcs > arcPool_.length)
+        arcPool_ = Arrays.copyOf(arcPool_,
+                                 Math.max(poolSize_ + numArcs,
+                                          2 * arcPool_.length));
+      System.arraycopy(arcs, 0, arcPool_, poolSize_, numArcs);
+      if (numNodes_ + 1 >= nodeStarts_.length)
+        nodeStarts_ = Arrays.copyOf(nodeStarts_, 2 * nodeStarts_.length);
+      nodeStarts_[numNodes_] = poolSize_;
+      nodeStarts_[numNodes_ + 1] = poolSize_ + numArcs;
+
+      // Look it up in the hash table.
+      int mask = table_.length - 1;
+      int slot = hashNode(numNodes_) & mask;
+      while (table_[slot] != 0) {
+        int candidate = table_[slot];
+        if (nodesEqual(candidate, numNodes_))
+          return candidate;
+        slot = (slot + 1) & mask;
+      }
+
+      // No equivalent node exists, so keep the tentative one.
+      table_[slot] = numNodes_;
+      poolSize_ += numArcs;
+      // Node numbers are stored in the arcs' child fields, so they must fit
+      // there. The arc count is checked separately when the graph is laid
+      // out.
+      if (++numNodes_ > PackedGADDAG.MAX_ARCS)
+        throw new PackedGADDAG.PackingException("Cannot register more than "
+                                                + PackedGADDAG.MAX_ARCS
+                                                + " nodes.");
+      if (2 * numNodes_ > table_.length)
+        growTable();
+      return numNodes_ - 1;
+    }
+
+    /**
+     * Registers every node of another register in this one. Returns an array
+     * that maps the other register's node numbers to this register's.
+     * 
+     * @param other The register to import.
+     */
+    public int[] importNodes(NodeRegister other) {
+      int[] nodeMap = new int[other.numNodes_];
+      long[] arcs = new long[DELIMITER + 1];
+      for (int node = 1; node < other.numNodes_; node++) {
+        int numArcs = 0;
+        for (int i = other.nodeStarts_[node]; i < other.nodeStarts_[node + 1]; i++)
+          arcs[numArcs++] = remapChild(other.arcPool_[i], nodeMap);
+        nodeMap[node] = register(arcs, numArcs);
+      }
+      return nodeMap;
+    }
+
+    /**
+     * Returns the number of distinct nodes with outgoing arcs in this
+     * register.
+     */
+    public int getNumNodes() {
+      return numNodes_ - 1;
+    }
+
+    /**
+     * Lays out the registered nodes reachable from the given root node in
+     * breadth-first order, producing a packed GADDAG. The layout depends only
+     * on the structure of the graph, not on the order in which nodes were
+     * registered.
+     * 
+     * @param root The number of the root node.
+     * @param alphabet The alphabet used by the GADDAG.
+     * @throws PackedGADDAG.PackingException If the graph has more than
+     *           {@link PackedGADDAG#MAX_ARCS} arcs.
+     */
+    public PackedGADDAG layout(int root, Alphabet alphabet) {
+      int[] nodeIndices = new int[numNodes_];
+      int[] queue = new int[numNodes_];
+      int queueHead = 0;
+      int queueTail = 0;
+      long[] arcs = new long[poolSize_ + 1];
+      int numArcs = 1;
+
+      arcs[0] = PackedGADDAG.LAST_SIBLING_BIT
+                | (long) DELIMITER << PackedGADDAG.LETTER_SHIFT;
+      if (root != 0) {
+        nodeIndices[root] = numArcs;
+        numArcs += nodeStarts_[root + 1] - nodeStarts_[root];
+        queue[queueTail++] = root;
+        arcs[0] |= 1L << PackedGADDAG.CHILD_SHIFT;
+      }
+
+      while (queueHead < queueTail) {
+        int node = queue[queueHead++];
+        int i = nodeIndices[node];
+        for (int j = nodeStarts_[node]; j < nodeStarts_[node + 1]; j++) {
+          long arc = arcPool_[j];
+          int child = (int) (arc >>> PackedGADDAG.CHILD_SHIFT);
+          if (child != 0 && nodeIndices[child] == 0) {
+            nodeIndices[child] = numArcs;
+            numArcs += nodeStarts_[child + 1] - nodeStarts_[child];
+            if (numArcs > PackedGADDAG.MAX_ARCS)
+              throw new PackedGADDAG.PackingException("Cannot pack a GADDAG "
+                                                      + "with more than "
+                                                      + PackedGADDAG.MAX_ARCS
+                                                      + " arcs.");
+            queue[queueTail++] = child;
+          }
+          arc = remapChild(arc, nodeIndices);
+          if (j == nodeStarts_[node + 1] - 1)
+            arc |= PackedGADDAG.LAST_SIBLING_BIT;
+          arcs[i++] = arc;
+        }
+      }
+      return new PackedGADDAG(LongBuffer.wrap(Arrays.copyOf(arcs, numArcs)),
+                              alphabet);
+    }
+
+    /**
+     * Doubles the size of the hash table.
+     */
+    private void growTable() {
+      int[] table = new int[2 * table_.length];
+      int mask = table.length - 1;
+      for (int node : table_) {
+        if (node == 0)
+          continue;
+        int slot = hashNode(node) & mask;
+        while (table[slot] != 0)
+          slot = (slot + 1) & mask;
+        table[slot] = node;
+      }
+      table_ = table;
+    }
+
+    /**
+     * Hashes the arcs of the given node.
+     */
+    private int hashNode(int node) {
+      long hash = 0;
+      for (int i = nodeStarts_[node]; i < nodeStarts_[node + 1]; i++)
+        hash = (hash + arcPool_[i]) * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns true if and only if the given nodes have identical arcs.
+     */
+    private boolean nodesEqual(int node1, int node2) {
+      return Arrays.equals(arcPool_, nodeStarts_[node1],
+                           nodeStarts_[node1 + 1], arcPool_,
+                           nodeStarts_[node2], nodeStarts_[node2 + 1]);
+    }
+  }
+
+  /**
+   * Inserts sorted keys into a {@link NodeRegister}, maintaining the nodes
+   * along the path of the most recently inserted key. The arcs of the node at
+   * depth d are {@code pathArcs_[d][0]} through
+   * {@code pathArcs_[d][pathNumArcs_[d] - 1]}; the last of these leads to the
+   * node at depth d + 1, and its destination is unknown until that node is
+   * frozen.
+   */
+  private class PathInserter {
+    private NodeRegister register_;
+    private long[][] pathArcs_;
+    private int[] pathNumArcs_;
+    private byte[] pathKey_;
+    private int pathLength_;
+
+    /**
+     * Creates an inserter with an empty path.
+     * 
+     * @param register The register to freeze nodes into.
+     */
+    public PathInserter(NodeRegister register) {
+      register_ = register;
+      pathArcs_ = new long[maxWordLength_ + 2][numLetters_ + 1];
+      pathNumArcs_ = new int[maxWordLength_ + 2];
+      pathKey_ = new byte[maxWordLength_ + 2];
+      pathLength_ = 0;
+    }
+
+    /**
+     * Inserts a key into the graph. Keys must be inserted in sorted order.
+     * 
+     * @param key The key to insert.
+     */
+    public void insert(byte[] key) {
+      int pathLength = key.length - 1;
+
+      // Find the common prefix of this path and the previous one, then freeze
+      // the nodes of the previous path that lie beyond it.
+      int common = 0;
+      while (common < pathLength && common < pathLength_
+             && pathKey_[common] == key[common])
+        common++;
+      freezePath(common);
+
+      // Extend the path with new nodes.
+      for (int d = common; d < pathLength; d++) {
+        pathArcs_[d][pathNumArcs_[d]++] = (long) key[d] << PackedGADDAG.LETTER_SHIFT;
+        pathNumArcs_[d + 1] = 0;
+        pathKey_[d] = key[d];
+      }
+      pathLength_ = pathLength;
+
+      // Add the final letter to the letter set of the last arc on the path.
+      pathArcs_[pathLength - 1][pathNumArcs_[pathLength - 1] - 1] |= 1L << key[pathLength];
+    }
+
+    /**
+     * Freezes every node on the path and registers the root node. Returns the
+     * number of the root node.
+     */
+    public int finish() {
+      freezePath(0);
+      return register_.register(pathArcs_[0], pathNumArcs_[0]);
+    }
+
+    /**
+     * Freezes every node on the path, and returns a copy of the root node's
+     * arcs instead of registering the root node.
+     */
+    public long[] finishRootArcs() {
+      freezePath(0);
+      return Arrays.copyOf(pathArcs_[0], pathNumArcs_[0]);
+    }
+
+    /**
+     * Freezes the nodes on the current path deeper than the given depth,
+     * replacing each with its equivalent registered node.
+     */
+    private void freezePath(int depth) {
+      for (int d = pathLength_; d > depth; d--) {
+        int node = register_.register(pathArcs_[d], pathNumArcs_[d]);
+        long[] parentArcs = pathArcs_[d - 1];
+        parentArcs[pathNumArcs_[d - 1] - 1] |= (long) node << PackedGADDAG.CHILD_SHIFT;
+      }
+      if (depth < pathLength_)
+        pathLength_ = depth;
+    }
+  }
+
+  private int numLetters_;
+  // The words, stored back to back. Word i is stored in
+  // |wordPool_[wordEnds_[i - 1]]| through |wordPool_[wordEnds_[i] - 1]|.
+  private byte[] wordPool_;
+  private int[] wordEnds_;
+  private int numWords_;
+  private int maxWordLength_;
+  private int numNodes_;
+
+  /**
+   * Creates a new builder.
+   * 
+   * @param numLetters The number of letters in the alphabet.
+   */
+  MinimalGADDAGBuilder(int numLetters) {
+    if (numLetters > PackedGADDAG.MAX_LETTERS)
+      throw new PackedGADDAG.PackingException("Cannot pack a GADDAG for an alphabet of "
+                                              + numLetters
+                                              + " letters. At most "
+                                              + PackedGADDAG.MAX_LETTERS
+                                              + " are supported.");
+    numLetters_ = numLetters;
+    wordPool_ = new byte[1 << 16];
+    wordEnds_ = new int[1 << 12];
+    numWords_ = 0;
+  }
+
+  /**
+   * Adds a word to the GADDAG.
+   * 
+   * @param word A buffer containing the ordinals of the word's letters. The
+   *          letters are copied out of the buffer.
+   * @param length The number of letters in the word.
+   */
+  void addWord(byte[] word, int length) {
+    int start = numWords_ == 0 ? 0 : wordEnds_[numWords_ - 1];
+    if (start + length > wordPool_.length)
+      wordPool_ = Arrays.copyOf(wordPool_, Math.max(start + length,
+                                                    2 * wordPool_.length));
+    if (numWords_ == wordEnds_.length)
+      wordEnds_ = Arrays.copyOf(wordEnds_, 2 * wordEnds_.length);
+    System.arraycopy(word, 0, wordPool_, start, length);
+    wordEnds_[numWords_++] = start + length;
+    maxWordLength_ = Math.max(maxWordLength_, length);
+  }
+
+  /**
+   * Returns the number of words that have been added.
+   */
+  int getNumWords() {
+    return numWords_;
+  }
+
+  /**
+   * Returns the number of distinct nodes with outgoing arcs in the most
+   * recently built GADDAG.
+   */
+  int getNumNodes() {
+    return numNodes_;
+  }
+
+  /**
+   * Builds the GADDAG from the words added so far, on the calling thread.
+   * 
+   * @param alphabet The alphabet used by the words.
+   * @throws PackedGADDAG.PackingException If the GADDAG is too large to pack.
+   */
+  PackedGADDAG build(Alphabet alphabet) throws PackedGADDAG.PackingException {
+    NodeRegister register = new NodeRegister();
+    PathInserter inserter = new PathInserter(register);
+    for (int first = 0; first < numLetters_; first++) {
+      for (byte[] key : generateKeys(first))
+        inserter.insert(key);
+    }
+    int root = inserter.finish();
+    numNodes_ = register.getNumNodes();
+    return register.layout(root, alphabet);
+  }
+
+  /**
+   * Builds the GADDAG from the words added so far, building the subgraph for
+   * each leading letter as a separate task in the given pool. The result is
+   * identical to that of {@link #build}.
+   * 
+   * @param alphabet The alphabet used by the words.
+   * @param pool The pool to build the subgraphs in.
+   * @throws PackedGADDAG.PackingException If the GADDAG is too large to pack.
+   */
+  PackedGADDAG build(Alphabet alphabet, ForkJoinPool pool) throws PackedGADDAG.PackingException {
+    List<ForkJoinTask<NodeRegister>> tasks = new ArrayList<ForkJoinTask<NodeRegister>>();
+    final long[][] rootArcs = new long[numLetters_][];
+    for (int first = 0; first < numLetters_; first++) {
+      final int partition = first;
+      tasks.add(pool.submit(new Callable<NodeRegister>() {
+        @Override
+        public NodeRegister call() {
+          NodeRegister register = new NodeRegister();
+          PathInserter inserter = new PathInserter(register);
+          for (byte[] key : generateKeys(partition))
+            inserter.insert(key);
+          rootArcs[partition] = inserter.finishRootArcs();
+          return register;
+        }
+      }));
+    }
+
+    // Merge the subgraphs into one register, in order of their leading
+    // letters.
+    NodeRegister register = new NodeRegister();
+    long[] mergedRootArcs = new long[numLetters_];
+    int numRootArcs = 0;
+    for (int first = 0; first < numLetters_; first++) {
+      int[] nodeMap = register.importNodes(tasks.get(first).join());
+      // Every key in a partition starts with the same letter, so each
+      // partition contributes at most one root arc.
+      for (long arc : rootArcs[first])
+        mergedRootArcs[numRootArcs++] = remapChild(arc, nodeMap);
+    }
+    int root = register.register(mergedRootArcs, numRootArcs);
+    numNodes_ = register.getNumNodes();
+    return register.layout(root, alphabet);
+  }
+
+  /**
+   * Generates the sorted keys for all of the GADDAG paths that start with the
+   * given letter. For a word w of length n, these are REV(w[0..k-1]) w[k] for
+   * k = n, and REV(w[0..k-1]) DELIMITER w[k..n-1] for 1 &lt;= k &lt; n, where
+   * each key's final letter is the one stored in a letter set.
+   */
+  private byte[][] generateKeys(int first) {
+    List<byte[]> keys = new ArrayList<byte[]>();
+    byte[] pool = wordPool_;
+    for (int w = 0; w < numWords_; w++) {
+      int start = w == 0 ? 0 : wordEnds_[w - 1];
+      int n = wordEnds_[w] - start;
+      for (int k = 1; k <= n; k++) {
+        if (pool[start + k - 1] != first)
+          continue;
+        byte[] key = new byte[k == n ? n : n + 1];
+        int i = 0;
+        for (int j = k - 1; j >= 0; j--)
+          key[i++] = pool[start + j];
+        if (k < n) {
+          key[i++] = (byte) DELIMITER;
+          for (int j = k; j < n; j++)
+            key[i++] = pool[start + j];
+        }
+        keys.add(key);
+      }
+    }
+    byte[][] sortedKeys = keys.toArray(new byte[keys.size()][]);
+    Arrays.sort(sortedKeys, new Comparator<byte[]>() {
+      @Override
+      public int compare(byte[] a, byte[] b) {
+        return Arrays.compare(a, b);
+      }
+    });
+    return sortedKeys;
+  }
+
+  /**
+   * Replaces the destination of the given packed arc using the given map.
+   */
+  private static long remapChild(long arc, int[] map) {
+    int child = (int) (arc >>> PackedGADDAG.CHILD_SHIFT);
+    return (arc & ~CHILD_MASK) | (long) map[child] << PackedGADDAG.CHILD_SHIFT;
+  }
+}
@@ -1,5 +1,6 @@
 package scrabbletool.gaddag;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -44,6 +45,15 @@ public class Node {
     return outgoingArcs_.get(letter);
   }
 
+  /**
+   * Returns an unmodifiable view of this node's outgoing arcs, mapped by their
+   * letters. The map is ordered such that the {@link Delimiter} arc (if any)
+   * comes last.
+   */
+  Map<ArcLetter, Arc> getArcs() {
+    return Collections.unmodifiableMap(outgoingArcs_);
+  }
+
   /**
    * Adds an outgoing arc to this node for the specified letter, if one does not
    * already exist. Arcs created by this method will point to new, empty nodes.
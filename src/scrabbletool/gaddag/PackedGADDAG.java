@@ -0,0 +1,291 @@
+package scrabbletool.gaddag;
+
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import scrabbletool.game.Alphabet;
+import scrabbletool.game.Letter;
+
+/**
+ * <p>
+ * A read-only form of the {@link GADDAG} whose arcs are stored in a single flat
+ * buffer of {@code long}s instead of as a graph of {@link Node} and {@link Arc}
+ * objects. The buffer may either wrap a heap array or a memory-mapped
+ * {@link GADDAGSnapshot} file.
+ * </p>
+ * <p>
+ * Arcs are referred to by integer <em>handles</em>. The outgoing arcs of a node
+ * occupy a contiguous run of the array, sorted by letter with the delimiter
+ * last, and the final arc of each run is flagged as the last sibling. Each arc
+ * packs the following fields into one {@code long}:
+ * </p>
+ * 
+ * <pre>
+ * bits  0-31  letter set (bit i set if the letter with ordinal i is present)
+ * bits 32-37  letter ordinal of the arc
+ * bit     38  last-sibling flag
+ * bits 39-63  index of the destination node's first arc (0 if none)
+ * </pre>
+ * 
+ * <p>
+ * Handle 0 is the root arc. Since no arc can point back at it, a child index of
+ * 0 marks a destination node without outgoing arcs.
+ * </p>
+ */
+public class PackedGADDAG {
+  /**
+   * Thrown when a GADDAG is too large or uses too many letters to be packed.
+   */
+  public static class PackingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PackingException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * The handle returned by lookups when no matching arc exists.
+   */
+  public static final int NO_ARC = -1;
+
+  /**
+   * The maximum number of letters a packed GADDAG's alphabet may contain.
+   */
+  public static final int MAX_LETTERS = 32;
+
+  static final int DELIMITER_ORDINAL = 0x3F;
+  static final int LETTER_SHIFT = 32;
+  static final long LETTER_SET_MASK = 0xFFFFFFFFL;
+  static final long LAST_SIBLING_BIT = 1L << 38;
+  static final int CHILD_SHIFT = 39;
+  static final int MAX_ARCS = 1 << (64 - CHILD_SHIFT);
+
+  private LongBuffer arcs_;
+
+  /**
+   * Creates a packed GADDAG using the given arc buffer.
+   * 
+   * @param arcs The packed arcs. Index 0 must hold the root arc.
+   * @param alphabet The alphabet that determines the letter ordinals.
+   */
+  PackedGADDAG(LongBuffer arcs, Alphabet alphabet) {
+    arcs_ = arcs;
+    if (alphabet.size() > MAX_LETTERS)
+      throw new PackingException("Cannot pack a GADDAG for an alphabet of "
+                                 + alphabet.size() + " letters. At most "
+                                 + MAX_LETTERS + " are supported.");
+  }
+
+  /**
+   * Returns the root arc into the graph, i.e. the arc leading to the root node.
+   */
+  public int getRootArc() {
+    return 0;
+  }
+
+  /**
+   * Returns the arc for the given letter leaving the destination node of the
+   * given arc, or {@link #NO_ARC} if there is no such arc.
+   * 
+   * @param arc The arc whose destination node should be searched.
+   * @param letter The letter for the arc to find.
+   */
+  public int getArc(int arc, Letter letter) {
+    return findArc(arc, letter.getOrdinal());
+  }
+
+  /**
+   * Returns the arc for the letter with the given ordinal leaving the
+   * destination node of the given arc, or {@link #NO_ARC} if there is no such
+   * arc.
+   * 
+   * @param arc The arc whose destination node should be searched.
+   * @param ordinal The ordinal of the letter for the arc to find.
+   */
+  public int getArc(int arc, int ordinal) {
+    return findArc(arc, ordinal);
+  }
+
+  /**
+   * Returns the delimiter arc leaving the destination node of the given arc, or
+   * {@link #NO_ARC} if there is no such arc.
+   * 
+   * @param arc The arc whose destination node should be searched.
+   */
+  public int getDelimiterArc(int arc) {
+    return findArc(arc, DELIMITER_ORDINAL);
+  }
+
+  /**
+   * Returns true if and only if the given letter exists in the letter set on
+   * the given arc.
+   * 
+   * @param arc The arc to test.
+   * @param letter The letter to test.
+   */
+  public boolean hasLetter(int arc, Letter letter) {
+    return (arcs_.get(arc) & LETTER_SET_MASK & letter.getMask()) != 0;
+  }
+
+  /**
+   * Returns true if and only if the letter with the given ordinal exists in the
+   * letter set on the given arc.
+   * 
+   * @param arc The arc to test.
+   * @param ordinal The ordinal of the letter to test.
+   */
+  public boolean hasLetter(int arc, int ordinal) {
+    return (arcs_.get(arc) & LETTER_SET_MASK & (1L << ordinal)) != 0;
+  }
+
+  /**
+   * Returns the letter set on the given arc as a bitmask of letter ordinals.
+   * 
+   * @param arc The arc to use.
+   * @see Alphabet#getLetters(long)
+   */
+  public long getLetterSet(int arc) {
+    return arcs_.get(arc) & LETTER_SET_MASK;
+  }
+
+  /**
+   * Returns the bitmask of the letters that have an arc leaving the
+   * destination node of the given arc. The delimiter arc is not included.
+   * 
+   * @param arc The arc whose destination node should be searched.
+   */
+  public long getOutgoingLetters(int arc) {
+    int i = (int) (arcs_.get(arc) >>> CHILD_SHIFT);
+    if (i == 0)
+      return 0;
+    long letters = 0;
+    while (true) {
+      long packedArc = arcs_.get(i);
+      int ordinal = (int) (packedArc >>> LETTER_SHIFT) & DELIMITER_ORDINAL;
+      if (ordinal != DELIMITER_ORDINAL)
+        letters |= 1L << ordinal;
+      if ((packedArc & LAST_SIBLING_BIT) != 0)
+        return letters;
+      i++;
+    }
+  }
+
+  /**
+   * Returns the total number of arcs in this graph, including the root arc.
+   */
+  public int getNumArcs() {
+    return arcs_.limit();
+  }
+
+  /**
+   * Returns a read-only view of the packed arc buffer.
+   */
+  LongBuffer getArcs() {
+    return arcs_.asReadOnlyBuffer();
+  }
+
+  /**
+   * Searches the destination node of the given arc for an outgoing arc with
+   * the given letter ordinal.
+   */
+  private int findArc(int arc, int ordinal) {
+    int i = (int) (arcs_.get(arc) >>> CHILD_SHIFT);
+    if (i == 0)
+      return NO_ARC;
+    // Siblings are sorted by ordinal, so we can stop as soon as we pass it.
+    while (true) {
+      long packedArc = arcs_.get(i);
+      int arcOrdinal = (int) (packedArc >>> LETTER_SHIFT) & DELIMITER_ORDINAL;
+      if (arcOrdinal == ordinal)
+        return i;
+      if (arcOrdinal > ordinal || (packedArc & LAST_SIBLING_BIT) != 0)
+        return NO_ARC;
+      i++;
+    }
+  }
+
+  /**
+   * Creates a packed copy of the given {@link GADDAG}.
+   * 
+   * @param gaddag The GADDAG to pack.
+   * @param alphabet The alphabet used by the GADDAG.
+   * @throws PackingException If the GADDAG is too large to pack.
+   */
+  static PackedGADDAG pack(GADDAG gaddag, Alphabet alphabet) throws PackingException {
+    // Assign each node with outgoing arcs a contiguous block of the array, in
+    // breadth-first order. |blockStarts| maps each such node to its block.
+    Map<Node, Integer> blockStarts = new IdentityHashMap<Node, Integer>();
+    Deque<Node> queue = new ArrayDeque<Node>();
+    long[] arcs = new long[1024];
+    int numArcs = 1;
+
+    Arc rootArc = gaddag.getRootArc();
+    arcs[0] = packArc(rootArc, DELIMITER_ORDINAL, true,
+                      allocateBlock(rootArc.getDestination(), 1, blockStarts,
+                                    queue));
+    numArcs += rootArc.getDestination().getArcs().size();
+
+    while (!queue.isEmpty()) {
+      Node node = queue.removeFirst();
+      int i = blockStarts.get(node);
+      if (numArcs > arcs.length)
+        arcs = Arrays.copyOf(arcs, Math.max(numArcs, 2 * arcs.length));
+
+      Set<Map.Entry<ArcLetter, Arc>> entries = node.getArcs().entrySet();
+      int remaining = entries.size();
+      for (Map.Entry<ArcLetter, Arc> entry : entries) {
+        Arc arc = entry.getValue();
+        Node destination = arc.getDestination();
+        int child = allocateBlock(destination, numArcs, blockStarts, queue);
+        if (child == numArcs)
+          numArcs += destination.getArcs().size();
+        if (numArcs > MAX_ARCS)
+          throw new PackingException("Cannot pack a GADDAG with more than "
+                                     + MAX_ARCS + " arcs.");
+
+        arcs[i++] = packArc(arc, entry.getKey().getOrdinal(),
+                            --remaining == 0, child);
+      }
+    }
+    return new PackedGADDAG(LongBuffer.wrap(Arrays.copyOf(arcs, numArcs)),
+                            alphabet);
+  }
+
+  /**
+   * Returns the index of the block assigned to the given node, assigning it the
+   * block starting at {@code nextFree} if it has not been seen before.
+   * Returns 0 if the node has no outgoing arcs.
+   */
+  private static int allocateBlock(Node node,
+                                   int nextFree,
+                                   Map<Node, Integer> blockStarts,
+                                   Deque<Node> queue) {
+    if (node.getArcs().isEmpty())
+      return 0;
+    Integer blockStart = blockStarts.get(node);
+    if (blockStart != null)
+      return blockStart;
+    blockStarts.put(node, nextFree);
+    queue.addLast(node);
+    return nextFree;
+  }
+
+  /**
+   * Packs the given arc fields into a {@code long}.
+   */
+  private static long packArc(Arc arc,
+                              int ordinal,
+                              boolean lastSibling,
+                              int child) {
+    long packedArc = (long) child << CHILD_SHIFT;
+    packedArc |= (long) ordinal << LETTER_SHIFT;
+    if (lastSibling)
+      packedArc |= LAST_SIBLING_BIT;
+    return packedArc | arc.getLetterSet();
+  }
+}
@@ -1,22 +1,48 @@
 package scrabbletool.game;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.zip.CRC32;
 
 /**
+ * <p>
  * The Scrabble alphabet consists of all {@link Letter}s allowed in valid words.
+ * </p>
+ * <p>
+ * Each letter in the alphabet is assigned a dense {@link Letter#getOrdinal()
+ * ordinal}, so that a set of letters can be represented as a {@code long}
+ * bitmask in which bit {@code i} is set if and only if the set contains the
+ * letter with ordinal {@code i}. Because the GADDAG and the move generator
+ * store every letter set as a bitmask, an alphabet may hold at most
+ * {@link #MAX_MASK_SIZE} letters.
+ * </p>
  * 
  * @author Philip Puryear
  */
 public class Alphabet {
+  /**
+   * The maximum number of letters in an alphabet: the number of letter sets
+   * that can be represented as {@code long} bitmasks.
+   */
+  public static final int MAX_MASK_SIZE = Long.SIZE;
+
   private TreeSet<Letter> letters_;
+  private Letter[] ordinalLetters_;
+  private Map<String, Letter> textLetters_;
+  private int numBlanks_;
 
   /**
    * Creates a new, empty alphabet.
    */
   Alphabet() {
     letters_ = new TreeSet<Letter>();
+    ordinalLetters_ = new Letter[0];
+    textLetters_ = new HashMap<String, Letter>();
+    numBlanks_ = 0;
   }
 
   /**
@@ -26,6 +52,44 @@ public class Alphabet {
     return Collections.unmodifiableSet(letters_);
   }
 
+  /**
+   * Returns the number of letters in this alphabet.
+   */
+  public int size() {
+    return ordinalLetters_.length;
+  }
+
+  /**
+   * Returns the number of blank tiles in a full bag.
+   */
+  public int getNumBlanks() {
+    return numBlanks_;
+  }
+
+  /**
+   * Returns the number of tiles in a full bag, including blanks.
+   */
+  public int getNumTiles() {
+    int numTiles = numBlanks_;
+    for (Letter letter : ordinalLetters_)
+      numTiles += letter.getCount();
+    return numTiles;
+  }
+
+  /**
+   * Returns a checksum of this alphabet's letters, in ordinal order. Files that
+   * store letter ordinals record this value, because the ordinals are only
+   * meaningful for the alphabet they were written with.
+   */
+  public int getChecksum() {
+    CRC32 checksum = new CRC32();
+    for (Letter letter : ordinalLetters_) {
+      checksum.update(letter.getText().getBytes(StandardCharsets.UTF_8));
+      checksum.update(0);
+    }
+    return (int) checksum.getValue();
+  }
+
   /**
    * Returns the {@link Letter} in this alphabet that has the given textual
    * representation, or {@code null} if no such letter exists.
@@ -33,19 +97,78 @@ public class Alphabet {
    * @param text The textual representation of the letter.
    */
   public Letter getLetter(String text) {
-    Letter dummyLetter = new Letter(text, 0);
-    Letter mapLetter = letters_.ceiling(dummyLetter);
-    if (!mapLetter.getText().equals(text))
-      return null;
-    return mapLetter;
+    return textLetters_.get(text);
   }
 
   /**
-   * Adds the given letter to this alphabet.
+   * Returns the {@link Letter} in this alphabet that has the given ordinal.
+   * 
+   * @param ordinal The ordinal of the letter.
+   */
+  public Letter getLetter(int ordinal) {
+    return ordinalLetters_[ordinal];
+  }
+
+  /**
+   * Returns the bitmask of the letter set that contains every letter in this
+   * alphabet.
+   */
+  public long getMask() {
+    int size = size();
+    return size >= MAX_MASK_SIZE ? -1L : (1L << size) - 1;
+  }
+
+  /**
+   * Returns the bitmask of the given set of letters from this alphabet.
+   * 
+   * @param letters The letters to include.
+   */
+  public long getMask(Set<Letter> letters) {
+    long mask = 0;
+    for (Letter letter : letters)
+      mask |= letter.getMask();
+    return mask;
+  }
+
+  /**
+   * Returns the set of letters represented by the given bitmask.
+   * 
+   * @param mask The bitmask to convert.
+   */
+  public Set<Letter> getLetters(long mask) {
+    Set<Letter> letters = new TreeSet<Letter>();
+    for (; mask != 0; mask &= mask - 1)
+      letters.add(ordinalLetters_[Long.numberOfTrailingZeros(mask)]);
+    return letters;
+  }
+
+  /**
+   * Adds the given letter to this alphabet, and reassigns the ordinals of all
+   * letters in this alphabet to match their natural ordering.
    * 
    * @param letter The letter to add.
+   * @throws IllegalArgumentException If this alphabet already holds
+   *           {@link #MAX_MASK_SIZE} letters.
    */
   void addLetter(Letter letter) {
+    if (letters_.size() == MAX_MASK_SIZE && !letters_.contains(letter))
+      throw new IllegalArgumentException("Cannot add a letter to an alphabet "
+                                         + "of " + MAX_MASK_SIZE
+                                         + " letters. At most "
+                                         + MAX_MASK_SIZE + " are supported.");
     letters_.add(letter);
+    textLetters_.put(letter.getText(), letter);
+    ordinalLetters_ = letters_.toArray(new Letter[letters_.size()]);
+    for (int i = 0; i < ordinalLetters_.length; i++)
+      ordinalLetters_[i].setOrdinal(i);
+  }
+
+  /**
+   * Sets the number of blank tiles in a full bag.
+   * 
+   * @param numBlanks The number of blanks.
+   */
+  void setNumBlanks(int numBlanks) {
+    numBlanks_ = numBlanks;
   }
 }
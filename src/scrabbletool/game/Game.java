@@ -1,6 +1,6 @@
 package scrabbletool.game;
 
-import scrabbletool.gaddag.GADDAG;
+import scrabbletool.gaddag.PackedGADDAG;
 import scrabbletool.game.board.Board;
 import scrabbletool.game.movegen.MoveGenerator;
 
@@ -10,9 +10,22 @@ import scrabbletool.game.movegen.MoveGenerator;
  * @author Philip Puryear
  */
 public class Game {
+  /**
+   * The number of tiles on a full rack.
+   */
+  public static final int RACK_SIZE = 7;
+
+  /**
+   * The bonus scored by a move that uses a full rack, i.e. that places
+   * {@link #RACK_SIZE} tiles.
+   */
+  public static final int FULL_RACK_BONUS = 50;
+
   private Board board_;
   private Alphabet alphabet_;
-  private GADDAG gaddag_;
+  private PackedGADDAG gaddag_;
+  private TileBag bag_;
+  private LeaveTable leaves_;
   private MoveGenerator moveGen_;
 
   /**
@@ -22,7 +35,7 @@ public class Game {
    * @param alphabet The alphabet to use.
    * @param gaddag The dictionary structure.
    */
-  Game(Board board, Alphabet alphabet, GADDAG gaddag) {
+  Game(Board board, Alphabet alphabet, PackedGADDAG gaddag) {
     board_ = board;
     alphabet_ = alphabet;
     gaddag_ = gaddag;
@@ -32,6 +45,7 @@ public class Game {
    * Starts a new game.
    */
   public void newGame() {
+    bag_ = null;
   }
 
   public boolean isValidMove(Move move) {
@@ -46,6 +60,18 @@ public class Game {
     moveGen_.update(move);
   }
 
+  /**
+   * Returns a new game with a copy of this game's board, sharing its alphabet
+   * and dictionary. The copy can be played on independently of this game.
+   */
+  public Game copy() {
+    Game copy = new Game(board_.copy(), alphabet_, gaddag_);
+    if (bag_ != null)
+      copy.bag_ = bag_.copy();
+    copy.leaves_ = leaves_;
+    return copy;
+  }
+
   /**
    * Returns the {@link Board} used by this game.
    */
@@ -53,10 +79,47 @@ public class Game {
     return board_;
   }
 
+  /**
+   * Returns the bag of tiles that have not yet been drawn. The bag is filled
+   * when it is first asked for, so game types without a tile distribution can
+   * still be used for move generation.
+   * 
+   * @throws IllegalArgumentException If the alphabet has no tiles.
+   */
+  public TileBag getBag() {
+    if (bag_ == null)
+      bag_ = new TileBag(alphabet_);
+    return bag_;
+  }
+
   /**
    * Returns the {@link Alphabet} used by this game.
    */
   public Alphabet getAlphabet() {
     return alphabet_;
   }
+
+  /**
+   * Returns the {@link PackedGADDAG} used by this game.
+   */
+  public PackedGADDAG getGADDAG() {
+    return gaddag_;
+  }
+
+  /**
+   * Returns the values of the rack leaves for this game, or {@code null} if
+   * the game type doesn't have any.
+   */
+  public LeaveTable getLeaveTable() {
+    return leaves_;
+  }
+
+  /**
+   * Sets the values of the rack leaves for this game.
+   * 
+   * @param leaves The leave values, or {@code null} for none.
+   */
+  public void setLeaveTable(LeaveTable leaves) {
+    leaves_ = leaves;
+  }
 }
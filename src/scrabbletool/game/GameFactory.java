@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -14,9 +15,12 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 import scrabbletool.ScrabbleTool;
-import scrabbletool.gaddag.GADDAG;
 import scrabbletool.gaddag.GADDAGFactory;
 import scrabbletool.gaddag.GADDAGFactory.WordSizeException;
+import scrabbletool.gaddag.GADDAGSnapshot;
+import scrabbletool.gaddag.GADDAGSnapshot.SnapshotFormatException;
+import scrabbletool.gaddag.PackedGADDAG;
+import scrabbletool.game.LeaveTable.LeaveFormatException;
 import scrabbletool.game.XMLUtilities.XMLSyntaxException;
 import scrabbletool.game.board.Board;
 import scrabbletool.game.board.Board.BoardParameterException;
@@ -28,6 +32,18 @@ import scrabbletool.game.board.Modifier;
  * @author Philip Puryear
  */
 public class GameFactory {
+  /**
+   * The extension appended to a dictionary's filename to form the filename of
+   * its {@link GADDAGSnapshot}.
+   */
+  public static final String SNAPSHOT_FILE_EXTENSION = ".gaddag";
+
+  /**
+   * The extension appended to a leave file's filename to form the filename of
+   * its memory-mapped {@link LeaveTable}.
+   */
+  public static final String LEAVE_TABLE_FILE_EXTENSION = ".leaves";
+
   private static Map<String, Modifier.Type> modifierTypeMap_;
 
   static {
@@ -48,6 +64,9 @@ public class GameFactory {
   public static Game newGame(Path gameTypeFile) throws IOException,
                                                XMLSyntaxException,
                                                WordSizeException {
+    GameLoadEvent event = new GameLoadEvent();
+    event.begin();
+
     // Parse the game file into an XML document object.
     Document gameDoc = null;
     try (InputStream gameTypeFileIS = Files.newInputStream(gameTypeFile)) {
@@ -73,13 +92,30 @@ public class GameFactory {
                                                                            "modifiers");
     Element boardElement = XMLUtilities.getSingleChildElementByTagName(rootElement,
                                                                        "board");
+    // The leave values are optional.
+    List<Element> leavesElements = XMLUtilities.getChildElementsByTagName(rootElement,
+                                                                          "leaves");
+    if (leavesElements.size() > 1)
+      throw new XMLSyntaxException(leavesElements.get(1));
 
     // Construct the various structures needed by |Game|.
     Alphabet alphabet = newAlphabet(tilesElement);
-    GADDAG gaddag = newGADDAG(dictElement, alphabet);
+    PackedGADDAG gaddag = newGADDAG(dictElement, alphabet);
     Board board = newBoard(boardElement, modifiersElement);
+    LeaveTable leaves = null;
+    if (!leavesElements.isEmpty())
+      leaves = newLeaveTable(leavesElements.get(0), alphabet);
 
-    return new Game(board, alphabet, gaddag);
+    if (event.shouldCommit()) {
+      event.gameTypeFile = gameTypeFile.toString();
+      event.boardSize = board.size();
+      event.alphabetSize = alphabet.size();
+      event.lexiconArcs = gaddag.getNumArcs();
+      event.commit();
+    }
+    Game game = new Game(board, alphabet, gaddag);
+    game.setLeaveTable(leaves);
+    return game;
   }
 
   /**
@@ -100,20 +136,49 @@ public class GameFactory {
       if (text.isEmpty())
         throw new XMLSyntaxException(letterElement);
 
-      // Get the letter score value of this letter.
-      int value = 0;
-      try {
-        value = Integer.parseInt(letterElement.getAttribute("value"));
-      } catch (NumberFormatException e) {
-        throw new XMLSyntaxException(letterElement);
-      }
-      alphabet.addLetter(new Letter(text, value));
+      // Get the letter score value of this letter, and the number of tiles
+      // with this letter. Game types that are never played from a bag may
+      // leave the count out.
+      int value = parseIntAttribute(letterElement, "value");
+      int count = letterElement.hasAttribute("count")
+                  ? parseIntAttribute(letterElement, "count") : 0;
+      alphabet.addLetter(new Letter(text, value, count));
     }
+
+    // The number of blanks is given by the optional "blank" element.
+    List<Element> blankElements = XMLUtilities.getChildElementsByTagName(tilesElement,
+                                                                         "blank");
+    if (blankElements.size() > 1)
+      throw new XMLSyntaxException(tilesElement);
+    if (!blankElements.isEmpty())
+      alphabet.setNumBlanks(parseIntAttribute(blankElements.get(0), "count"));
     return alphabet;
   }
 
   /**
-   * Constructs a new GADDAG.
+   * Returns the value of a non-negative integer attribute of an element.
+   * 
+   * @param element The element.
+   * @param name The name of the attribute.
+   * @throws XMLSyntaxException If the attribute is missing or is not a
+   *           non-negative integer.
+   */
+  private static int parseIntAttribute(Element element, String name) throws XMLSyntaxException {
+    int value;
+    try {
+      value = Integer.parseInt(element.getAttribute(name));
+    } catch (NumberFormatException e) {
+      throw new XMLSyntaxException(element);
+    }
+    if (value < 0)
+      throw new XMLSyntaxException(element);
+    return value;
+  }
+
+  /**
+   * Constructs a new GADDAG. If the dictionary has a snapshot file that is
+   * newer than the dictionary itself, the GADDAG is mapped from the snapshot.
+   * Otherwise, the GADDAG is rebuilt and a new snapshot is written.
    * 
    * @param dictElement The "dictionary" element in the document.
    * @param alphabet The alphabet to be used by this GADDAG.
@@ -122,15 +187,85 @@ public class GameFactory {
    *           < 2.
    * @throws GameFileException If there is a syntax problem.
    */
-  private static GADDAG newGADDAG(Element dictElement, Alphabet alphabet) throws IOException,
-                                                                         WordSizeException,
-                                                                         XMLSyntaxException {
+  private static PackedGADDAG newGADDAG(Element dictElement, Alphabet alphabet) throws IOException,
+                                                                               WordSizeException,
+                                                                               XMLSyntaxException {
     // The dictionary filename is contained in the "filename" attribute.
     String dictFileName = dictElement.getAttribute("filename");
     if (dictFileName.isEmpty())
       throw new XMLSyntaxException(dictElement);
     Path dictFile = ScrabbleTool.DICTIONARY_FOLDER.resolve(dictFileName);
-    return GADDAGFactory.newGADDAG(dictFile, alphabet);
+    Path snapshotFile = dictFile.resolveSibling(dictFileName
+                                                + SNAPSHOT_FILE_EXTENSION);
+
+    // Use the snapshot if it is up to date.
+    if (Files.exists(snapshotFile)
+        && Files.getLastModifiedTime(snapshotFile)
+                .compareTo(Files.getLastModifiedTime(dictFile)) > 0) {
+      try {
+        return GADDAGSnapshot.open(snapshotFile, alphabet);
+      } catch (SnapshotFormatException e) {
+        // Fall through and rebuild the snapshot.
+      }
+    }
+
+    PackedGADDAG gaddag = GADDAGFactory.newMinimalGADDAG(dictFile, alphabet,
+                                                         ForkJoinPool.commonPool());
+    try {
+      GADDAGSnapshot.write(gaddag, alphabet, snapshotFile);
+    } catch (IOException e) {
+      // The snapshot is only a cache, so we can do without it (if, for
+      // instance, the dictionary folder is read-only).
+    }
+    return gaddag;
+  }
+
+  /**
+   * Constructs a new {@link LeaveTable}. If the leave file has a table file
+   * that is newer than the leave file itself, the table is mapped from it.
+   * Otherwise, the table is read from the leave file and a new table file is
+   * written.
+   * 
+   * @param leavesElement The "leaves" element in the document.
+   * @param alphabet The alphabet of the leaves.
+   * @throws IOException If there was a problem reading the leave file.
+   * @throws XMLSyntaxException If there is a syntax problem, or the leave file
+   *           is malformed.
+   */
+  private static LeaveTable newLeaveTable(Element leavesElement,
+                                          Alphabet alphabet) throws IOException,
+                                                            XMLSyntaxException {
+    // The leave filename is contained in the "filename" attribute.
+    String leaveFileName = leavesElement.getAttribute("filename");
+    if (leaveFileName.isEmpty())
+      throw new XMLSyntaxException(leavesElement);
+    Path leaveFile = ScrabbleTool.DICTIONARY_FOLDER.resolve(leaveFileName);
+    Path tableFile = leaveFile.resolveSibling(leaveFileName
+                                              + LEAVE_TABLE_FILE_EXTENSION);
+
+    // Use the table file if it is up to date.
+    if (Files.exists(tableFile)
+        && Files.getLastModifiedTime(tableFile)
+                .compareTo(Files.getLastModifiedTime(leaveFile)) > 0) {
+      try {
+        return LeaveTable.open(tableFile, alphabet);
+      } catch (LeaveFormatException e) {
+        // Fall through and rebuild the table file.
+      }
+    }
+
+    LeaveTable leaves;
+    try {
+      leaves = LeaveTable.read(leaveFile, alphabet);
+    } catch (LeaveFormatException e) {
+      throw new XMLSyntaxException(e);
+    }
+    try {
+      LeaveTable.write(leaves, alphabet, tableFile);
+    } catch (IOException e) {
+      // The table file is only a cache, so we can do without it.
+    }
+    return leaves;
   }
 
   /**
@@ -0,0 +1,28 @@
+package scrabbletool.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for loading a game from its descriptor file. Its
+ * fields are only filled in if the event is being recorded.
+ */
+@Name("scrabbletool.GameLoad")
+@Label("Game Load")
+@Category("ScrabbleTool")
+@Description("Loading a game and its lexicon from a game descriptor file")
+final class GameLoadEvent extends jdk.jfr.Event {
+  @Label("Game Type File")
+  String gameTypeFile;
+
+  @Label("Board Size")
+  int boardSize;
+
+  @Label("Alphabet Size")
+  int alphabetSize;
+
+  @Label("Lexicon Arcs")
+  int lexiconArcs;
+}
@@ -0,0 +1,433 @@
+package scrabbletool.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Tile;
+
+/**
+ * <p>
+ * A table of the values of rack leaves: the tiles that remain on a player's
+ * rack after a move. A move's equity is its score plus the value of its leave.
+ * </p>
+ * <p>
+ * A leave is keyed by a canonical packed encoding of its multiset of tiles.
+ * Each tile takes {@value #BITS_PER_TILE} bits, holding its letter ordinal
+ * plus one, or {@link #BLANK_CODE} for a blank, and the tiles are packed in
+ * order of ordinal with blanks last. The key of a leave therefore doesn't
+ * depend on the order of the tiles on the rack, and the empty leave has the
+ * key {@link #EMPTY}. Values are stored as whole numbers of
+ * {@code 1/}{@value #SCALE} points.
+ * </p>
+ * <p>
+ * The table is an open-addressed hash table with linear probing, kept at most
+ * half full, so a lookup takes a single multiply and, on average, fewer than
+ * two probes. The keys and values are held in primitive buffers, which are
+ * either arrays or a read-only memory mapping of a table file, so a table of a
+ * million leaves is shared between threads and processes without being
+ * deserialized. A table file consists of a fixed-size header followed by the
+ * keys and then the values, stored little-endian. The header layout is:
+ * </p>
+ * 
+ * <pre>
+ * int   magic number ("LEAV")
+ * int   format version
+ * int   checksum of the alphabet
+ * int   number of slots (a power of two)
+ * int   number of leaves
+ * int   (unused)
+ * long  CRC-32 of the keys and values
+ * </pre>
+ */
+public class LeaveTable {
+  /**
+   * Thrown when a leave file is malformed, was written by an incompatible
+   * version, or does not match the requested alphabet.
+   */
+  public static class LeaveFormatException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public LeaveFormatException(Path file, String problem) {
+      super("Cannot read leave file " + file + ": " + problem + ".");
+    }
+  }
+
+  /**
+   * The version of the table file format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The number of bits used to encode each tile of a leave.
+   */
+  public static final int BITS_PER_TILE = 6;
+
+  /**
+   * The code of a blank in a leave key. Letters are coded by their ordinal
+   * plus one, so alphabets may have at most {@code BLANK_CODE - 1} letters.
+   */
+  public static final int BLANK_CODE = (1 << BITS_PER_TILE) - 1;
+
+  /**
+   * The largest number of tiles a leave key can hold.
+   */
+  public static final int MAX_LEAVE_SIZE = (Long.SIZE - 1) / BITS_PER_TILE;
+
+  /**
+   * The key of the empty leave, whose value is always 0.
+   */
+  public static final long EMPTY = 0;
+
+  /**
+   * The number of value units in one point.
+   */
+  public static final int SCALE = 1000;
+
+  private static final int MAGIC = 0x5641454C;
+  private static final int HEADER_SIZE = 32;
+
+  private LongBuffer keys_;
+  private IntBuffer values_;
+  private int numLeaves_;
+  private int shift_;
+  private int mask_;
+
+  /**
+   * Creates a table with the given slots.
+   */
+  private LeaveTable(LongBuffer keys, IntBuffer values, int numLeaves) {
+    keys_ = keys;
+    values_ = values;
+    numLeaves_ = numLeaves;
+    shift_ = Long.SIZE - Integer.numberOfTrailingZeros(keys.capacity());
+    mask_ = keys.capacity() - 1;
+  }
+
+  /**
+   * Creates a table holding the given leaves. If a key is given more than
+   * once, its last value is used.
+   * 
+   * @param keys The keys of the leaves. The empty leave is ignored.
+   * @param values The values of the leaves, in units of
+   *          {@code 1/}{@value #SCALE} points.
+   * @param numLeaves The number of leaves to read from the arrays.
+   */
+  public static LeaveTable newLeaveTable(long[] keys, int[] values, int numLeaves) {
+    // Keep the table at most half full, so that probe sequences stay short.
+    int numSlots = Math.max(2, Integer.highestOneBit(Math.max(1, numLeaves)) << 2);
+    LeaveTable table = new LeaveTable(LongBuffer.wrap(new long[numSlots]),
+                                      IntBuffer.wrap(new int[numSlots]), 0);
+    for (int i = 0; i < numLeaves; i++) {
+      if (keys[i] == EMPTY)
+        continue;
+      int slot = table.findSlot(keys[i]);
+      if (table.keys_.get(slot) == EMPTY) {
+        table.keys_.put(slot, keys[i]);
+        table.numLeaves_++;
+      }
+      table.values_.put(slot, values[i]);
+    }
+    return table;
+  }
+
+  /**
+   * Reads a table from a text file. Each line holds a leave, written as its
+   * letters with "?" for blanks, and its value in points, separated by
+   * whitespace or a comma. Blank lines and lines starting with "#" are
+   * ignored.
+   * 
+   * @param file The text file to read.
+   * @param alphabet The alphabet of the leaves.
+   * @throws IOException If there is a problem reading the file.
+   * @throws LeaveFormatException If a line is malformed.
+   */
+  public static LeaveTable read(Path file, Alphabet alphabet) throws IOException,
+                                                             LeaveFormatException {
+    checkAlphabet(alphabet);
+    long[] keys = new long[1024];
+    int[] values = new int[keys.length];
+    int numLeaves = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file,
+                                                         StandardCharsets.UTF_8)) {
+      int lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#"))
+          continue;
+        String[] fields = line.split("[\\s,]+");
+        if (fields.length != 2)
+          throw new LeaveFormatException(file, "line " + lineNumber
+                                               + " must have two fields");
+        long key = parseLeave(alphabet, fields[0]);
+        if (key == -1)
+          throw new LeaveFormatException(file, "line " + lineNumber
+                                               + " has an invalid leave");
+        double value;
+        try {
+          value = Double.parseDouble(fields[1]);
+        } catch (NumberFormatException e) {
+          throw new LeaveFormatException(file, "line " + lineNumber
+                                               + " has an invalid value");
+        }
+
+        if (numLeaves == keys.length) {
+          keys = Arrays.copyOf(keys, 2 * numLeaves);
+          values = Arrays.copyOf(values, 2 * numLeaves);
+        }
+        keys[numLeaves] = key;
+        values[numLeaves++] = (int) Math.round(value * SCALE);
+      }
+    }
+    return newLeaveTable(keys, values, numLeaves);
+  }
+
+  /**
+   * Writes the given table to a table file. The file is written under a
+   * temporary name and then moved into place, so readers never observe a
+   * partially-written file.
+   * 
+   * @param table The table to write.
+   * @param alphabet The alphabet of the table's leaves.
+   * @param file The file to create or replace.
+   * @throws IOException If there is a problem writing the file.
+   */
+  public static void write(LeaveTable table, Alphabet alphabet, Path file) throws IOException {
+    int numSlots = table.keys_.capacity();
+    ByteBuffer data = ByteBuffer.allocate(numSlots * (Long.BYTES + Integer.BYTES))
+                                .order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < numSlots; i++)
+      data.putLong(table.keys_.get(i));
+    for (int i = 0; i < numSlots; i++)
+      data.putInt(table.values_.get(i));
+    data.flip();
+    CRC32 dataChecksum = new CRC32();
+    dataChecksum.update(data.duplicate());
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                                  .order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(alphabet.getChecksum());
+    header.putInt(numSlots);
+    header.putInt(table.numLeaves_);
+    header.putInt(0);
+    header.putLong(dataChecksum.getValue());
+    header.flip();
+
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempFile,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (header.hasRemaining())
+        channel.write(header);
+      while (data.hasRemaining())
+        channel.write(data);
+      channel.force(true);
+    }
+    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Opens a table file through a read-only memory mapping.
+   * 
+   * @param file The table file to open.
+   * @param alphabet The alphabet that the table must have been written with.
+   * @return A table backed by the mapped file.
+   * @throws IOException If there is a problem reading the file.
+   * @throws LeaveFormatException If the file is not a valid table file for
+   *           the given alphabet.
+   */
+  public static LeaveTable open(Path file, Alphabet alphabet) throws IOException,
+                                                             LeaveFormatException {
+    MappedByteBuffer mapping;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE)
+        throw new LeaveFormatException(file, "file is truncated");
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+    // Validate the header.
+    if (mapping.getInt() != MAGIC)
+      throw new LeaveFormatException(file, "not a leave table");
+    int version = mapping.getInt();
+    if (version != VERSION)
+      throw new LeaveFormatException(file, "unsupported version " + version);
+    if (mapping.getInt() != alphabet.getChecksum())
+      throw new LeaveFormatException(file, "alphabet mismatch");
+    int numSlots = mapping.getInt();
+    int numLeaves = mapping.getInt();
+    mapping.getInt();
+    long expectedChecksum = mapping.getLong();
+    if (numSlots < 2 || Integer.bitCount(numSlots) != 1
+        || numLeaves < 0 || numLeaves >= numSlots)
+      throw new LeaveFormatException(file, "invalid table size");
+    if (mapping.remaining() != (long) numSlots * (Long.BYTES + Integer.BYTES))
+      throw new LeaveFormatException(file, "file is truncated");
+
+    // Validate the table data.
+    ByteBuffer data = mapping.slice().order(ByteOrder.LITTLE_ENDIAN);
+    CRC32 dataChecksum = new CRC32();
+    dataChecksum.update(data.duplicate());
+    if (dataChecksum.getValue() != expectedChecksum)
+      throw new LeaveFormatException(file, "checksum mismatch");
+
+    LongBuffer keys = data.asLongBuffer();
+    keys.limit(numSlots);
+    data.position(numSlots * Long.BYTES);
+    IntBuffer values = data.slice().order(ByteOrder.LITTLE_ENDIAN)
+                           .asIntBuffer();
+    return new LeaveTable(keys.slice(), values, numLeaves);
+  }
+
+  /**
+   * Returns the key of a leave with the given tile added to it. Tiles must be
+   * added in order of ordinal, and blanks last, for the key to be canonical.
+   * 
+   * @param key The key of the leave.
+   * @param ordinal The ordinal of the letter of the tile.
+   */
+  public static long addTile(long key, int ordinal) {
+    return (key << BITS_PER_TILE) | (ordinal + 1);
+  }
+
+  /**
+   * Returns the key of a leave with a blank added to it.
+   * 
+   * @param key The key of the leave.
+   */
+  public static long addBlank(long key) {
+    return (key << BITS_PER_TILE) | BLANK_CODE;
+  }
+
+  /**
+   * Returns the key of the given leave.
+   * 
+   * @param alphabet The alphabet of the tiles.
+   * @param tiles The tiles of the leave, in any order.
+   * @throws IllegalArgumentException If there are more than
+   *           {@link #MAX_LEAVE_SIZE} tiles, or the alphabet has too many
+   *           letters to be coded.
+   */
+  public static long getKey(Alphabet alphabet, List<Tile> tiles) {
+    checkAlphabet(alphabet);
+    if (tiles.size() > MAX_LEAVE_SIZE)
+      throw new IllegalArgumentException("Cannot encode a leave of "
+                                         + tiles.size() + " tiles. Leaves must "
+                                         + "have at most " + MAX_LEAVE_SIZE
+                                         + " tiles.");
+    int[] counts = new int[alphabet.size()];
+    int numBlanks = 0;
+    for (Tile tile : tiles) {
+      if (tile instanceof Blank)
+        numBlanks++;
+      else
+        counts[tile.getLetter().getOrdinal()]++;
+    }
+    return getKey(counts, numBlanks);
+  }
+
+  /**
+   * Returns the number of leaves in this table.
+   */
+  public int size() {
+    return numLeaves_;
+  }
+
+  /**
+   * Returns the value of the leave with the given key, in units of
+   * {@code 1/}{@value #SCALE} points. Leaves that are not in this table,
+   * including the empty leave, are worth 0.
+   * 
+   * @param key The key of the leave.
+   */
+  public int getValue(long key) {
+    int slot = findSlot(key);
+    return keys_.get(slot) == key ? values_.get(slot) : 0;
+  }
+
+  /**
+   * Returns the slot that holds the given key, or the empty slot where it
+   * would be inserted.
+   */
+  private int findSlot(long key) {
+    // Fibonacci hashing spreads the low-entropy keys over the whole table.
+    int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift_);
+    while (true) {
+      long slotKey = keys_.get(slot);
+      if (slotKey == key || slotKey == EMPTY)
+        return slot;
+      slot = (slot + 1) & mask_;
+    }
+  }
+
+  /**
+   * Returns the key of a leave written as letters with "?" for blanks, or -1
+   * if it contains a character that isn't a letter of the alphabet or has too
+   * many tiles.
+   */
+  private static long parseLeave(Alphabet alphabet, String text) {
+    if (text.length() > MAX_LEAVE_SIZE)
+      return -1;
+    int[] counts = new int[alphabet.size()];
+    int numBlanks = 0;
+    for (int i = 0; i < text.length(); i++) {
+      String letterText = text.substring(i, i + 1);
+      if (letterText.equals("?")) {
+        numBlanks++;
+        continue;
+      }
+      Letter letter = alphabet.getLetter(letterText);
+      if (letter == null)
+        return -1;
+      counts[letter.getOrdinal()]++;
+    }
+    return getKey(counts, numBlanks);
+  }
+
+  /**
+   * Returns the key of the leave with the given numbers of each letter and of
+   * blanks.
+   */
+  private static long getKey(int[] counts, int numBlanks) {
+    long key = EMPTY;
+    for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+      for (int i = 0; i < counts[ordinal]; i++)
+        key = addTile(key, ordinal);
+    }
+    for (int i = 0; i < numBlanks; i++)
+      key = addBlank(key);
+    return key;
+  }
+
+  /**
+   * Checks that the letters of the given alphabet can be coded in leave keys.
+   */
+  private static void checkAlphabet(Alphabet alphabet) {
+    if (alphabet.size() >= BLANK_CODE)
+      throw new IllegalArgumentException("Cannot key leaves over an alphabet "
+                                         + "of " + alphabet.size()
+                                         + " letters. Alphabets must have "
+                                         + "fewer than " + BLANK_CODE
+                                         + " letters.");
+  }
+}
@@ -7,6 +7,11 @@ package scrabbletool.game;
  * letter score value}.
  * </p>
  * <p>
+ * Once added to an {@link Alphabet}, a letter also has an {@link #getOrdinal()
+ * ordinal}, its dense index in the alphabet, which is used to represent sets
+ * of letters as bitmasks.
+ * </p>
+ * <p>
  * This class has a natural ordering that is determined by the natural ordering
  * of its textual representation.
  * </p>
@@ -16,16 +21,32 @@ package scrabbletool.game;
 public class Letter implements Comparable<Letter> {
   private String text_;
   private int value_;
+  private int count_;
+  private int ordinal_;
 
   /**
-   * Constructs a new letter with the given text and value.
+   * Constructs a new letter with the given text and value, of which there are
+   * no tiles.
    * 
    * @param text The textual representation of this letter.
    * @param value The letter score value of this letter.
    */
   public Letter(String text, int value) {
+    this(text, value, 0);
+  }
+
+  /**
+   * Constructs a new letter with the given text, value and tile count.
+   * 
+   * @param text The textual representation of this letter.
+   * @param value The letter score value of this letter.
+   * @param count The number of tiles with this letter in a full bag.
+   */
+  public Letter(String text, int value, int count) {
     text_ = text;
     value_ = value;
+    count_ = count;
+    ordinal_ = -1;
   }
 
   /**
@@ -42,6 +63,40 @@ public class Letter implements Comparable<Letter> {
     return value_;
   }
 
+  /**
+   * Returns the number of tiles with this letter in a full bag.
+   */
+  public int getCount() {
+    return count_;
+  }
+
+  /**
+   * Returns the ordinal of this letter in its {@link Alphabet}, or -1 if this
+   * letter has not been added to an alphabet. Ordinals run from 0 to one less
+   * than the size of the alphabet, in the natural ordering of the letters.
+   */
+  public int getOrdinal() {
+    return ordinal_;
+  }
+
+  /**
+   * Returns the bitmask of the letter set that contains only this letter, i.e.
+   * {@code 1L << getOrdinal()}. Alphabets hold at most
+   * {@link Alphabet#MAX_MASK_SIZE} letters, so every letter has its own bit.
+   */
+  public long getMask() {
+    return 1L << ordinal_;
+  }
+
+  /**
+   * Sets the ordinal of this letter.
+   * 
+   * @param ordinal The ordinal to use.
+   */
+  void setOrdinal(int ordinal) {
+    ordinal_ = ordinal;
+  }
+
   @Override
   public int compareTo(Letter other) {
     return text_.compareTo(other.text_);
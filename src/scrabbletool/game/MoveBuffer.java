@@ -0,0 +1,172 @@
+package scrabbletool.game;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A growable list of scored moves in the {@link PackedMove} encoding.
+ * </p>
+ * <p>
+ * The moves are stored as parallel primitive arrays (one for each word of the
+ * encoding, and one for the scores) rather than as objects, so millions of
+ * moves can be held with a few bytes each and no per-move allocation.
+ * {@link Move} objects are only created when they are asked for.
+ * </p>
+ */
+public class MoveBuffer {
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private long[] positions_;
+  private long[] letters_;
+  private int[] scores_;
+  private int size_;
+
+  /**
+   * Creates an empty buffer.
+   */
+  public MoveBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty buffer with room for the given number of moves. The
+   * buffer grows as needed.
+   * 
+   * @param capacity The initial capacity.
+   */
+  public MoveBuffer(int capacity) {
+    capacity = Math.max(capacity, 1);
+    positions_ = new long[capacity];
+    letters_ = new long[capacity];
+    scores_ = new int[capacity];
+    size_ = 0;
+  }
+
+  /**
+   * Appends a packed move to this buffer.
+   * 
+   * @param positions The positions word of the move.
+   * @param letters The letters word of the move.
+   * @param score The score of the move.
+   */
+  public void add(long positions, long letters, int score) {
+    if (size_ == scores_.length) {
+      int capacity = 2 * size_;
+      positions_ = Arrays.copyOf(positions_, capacity);
+      letters_ = Arrays.copyOf(letters_, capacity);
+      scores_ = Arrays.copyOf(scores_, capacity);
+    }
+    positions_[size_] = positions;
+    letters_[size_] = letters;
+    scores_[size_] = score;
+    size_++;
+  }
+
+  /**
+   * Appends a move to this buffer.
+   * 
+   * @param move The move to add.
+   * @param score The score of the move.
+   */
+  public void add(Move move, int score) {
+    add(PackedMove.packPositions(move), PackedMove.packLetters(move), score);
+  }
+
+  /**
+   * Returns the number of moves in this buffer.
+   */
+  public int size() {
+    return size_;
+  }
+
+  /**
+   * Removes all moves from this buffer. Its capacity is kept.
+   */
+  public void clear() {
+    size_ = 0;
+  }
+
+  /**
+   * Returns the positions word of the move at the given index.
+   * 
+   * @param index The index of the move.
+   */
+  public long getPositions(int index) {
+    return positions_[index];
+  }
+
+  /**
+   * Returns the letters word of the move at the given index.
+   * 
+   * @param index The index of the move.
+   */
+  public long getLetters(int index) {
+    return letters_[index];
+  }
+
+  /**
+   * Returns the score of the move at the given index.
+   * 
+   * @param index The index of the move.
+   */
+  public int getScore(int index) {
+    return scores_[index];
+  }
+
+  /**
+   * Returns a hash code for the move at the given index.
+   * 
+   * @param index The index of the move.
+   * @see PackedMove#hash(long, long)
+   */
+  public int hash(int index) {
+    return PackedMove.hash(positions_[index], letters_[index]);
+  }
+
+  /**
+   * Returns true if and only if the moves at the given indices are the same
+   * move. Blanks and regular tiles with the same letter are different.
+   * 
+   * @param i The index of the first move.
+   * @param j The index of the second move.
+   */
+  public boolean isSameMove(int i, int j) {
+    return positions_[i] == positions_[j] && letters_[i] == letters_[j];
+  }
+
+  /**
+   * Creates the {@link Move} at the given index.
+   * 
+   * @param index The index of the move.
+   * @param alphabet The alphabet that the move's letter ordinals refer to.
+   */
+  public Move getMove(int index, Alphabet alphabet) {
+    return PackedMove.unpack(positions_[index], letters_[index], alphabet);
+  }
+
+  /**
+   * Sorts the moves in this buffer by score, highest first. Moves with equal
+   * scores keep their relative order.
+   */
+  public void sortByScore() {
+    // Sort primitive keys holding the negated score above the original index,
+    // then apply the resulting permutation to every array.
+    long[] keys = new long[size_];
+    for (int i = 0; i < size_; i++)
+      keys[i] = ((long) -scores_[i] << 32) | i;
+    Arrays.sort(keys);
+
+    long[] positions = new long[positions_.length];
+    long[] letters = new long[letters_.length];
+    int[] scores = new int[scores_.length];
+    for (int i = 0; i < size_; i++) {
+      int from = (int) keys[i];
+      positions[i] = positions_[from];
+      letters[i] = letters_[from];
+      scores[i] = scores_[from];
+    }
+    positions_ = positions;
+    letters_ = letters;
+    scores_ = scores;
+  }
+}
@@ -0,0 +1,198 @@
+package scrabbletool.game;
+
+import java.util.Map;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Tile;
+
+/**
+ * <p>
+ * Static methods for a compact encoding of {@link Move}s as a pair of
+ * {@code long}s, for code that handles moves by the million.
+ * </p>
+ * <p>
+ * The <em>positions</em> word is a bitmask of the columns (or rows, for a down
+ * move) that the move places tiles on, like a row of the board's occupancy
+ * bitboards. The <em>letters</em> word holds the placed tiles in position
+ * order, {@value #TILE_BITS} bits each: the letter ordinal, plus a flag for
+ * blanks. Above the tiles it holds the row or column of the move and the
+ * across flag.
+ * </p>
+ * <p>
+ * A move that places a single tile is always encoded as an across move, so
+ * that two encodings of the same move are equal if and only if both of their
+ * words are equal.
+ * </p>
+ * 
+ * @see Letter#getOrdinal()
+ */
+public class PackedMove {
+  /**
+   * The maximum number of tiles in a packed move.
+   */
+  public static final int MAX_TILES = 8;
+
+  /**
+   * The number of bits used for each tile in the letters word.
+   */
+  public static final int TILE_BITS = 7;
+
+  private static final long TILE_MASK = (1L << TILE_BITS) - 1;
+  private static final int BLANK_FLAG = 1 << 6;
+  private static final int LINE_SHIFT = MAX_TILES * TILE_BITS;
+  private static final long LINE_MASK = 0x3F;
+  private static final long ACROSS_FLAG = 1L << 62;
+
+  /**
+   * Returns a letters word with the given orientation and line, and no tiles.
+   * 
+   * @param across True for an across move, false for a down move.
+   * @param rowOrCol The row (for an across move) or column (for a down move).
+   */
+  public static long newLetters(boolean across, int rowOrCol) {
+    long letters = (long) rowOrCol << LINE_SHIFT;
+    if (across)
+      letters |= ACROSS_FLAG;
+    return letters;
+  }
+
+  /**
+   * Returns the given letters word with a tile added.
+   * 
+   * @param letters The letters word to add the tile to.
+   * @param index The index of the tile among the move's tiles, in position
+   *          order.
+   * @param ordinal The ordinal of the tile's letter.
+   * @param blank True if the tile is a blank.
+   */
+  public static long addTile(long letters,
+                             int index,
+                             int ordinal,
+                             boolean blank) {
+    long code = blank ? ordinal | BLANK_FLAG : ordinal;
+    return letters | code << (index * TILE_BITS);
+  }
+
+  /**
+   * Returns the number of tiles placed by a packed move.
+   * 
+   * @param positions The positions word of the move.
+   */
+  public static int getNumTiles(long positions) {
+    return Long.bitCount(positions);
+  }
+
+  /**
+   * Returns true if and only if a packed move is an across move.
+   * 
+   * @param letters The letters word of the move.
+   */
+  public static boolean isAcross(long letters) {
+    return (letters & ACROSS_FLAG) != 0;
+  }
+
+  /**
+   * Returns the row (for an across move) or column (for a down move) of a
+   * packed move.
+   * 
+   * @param letters The letters word of the move.
+   */
+  public static int getRowOrCol(long letters) {
+    return (int) ((letters >>> LINE_SHIFT) & LINE_MASK);
+  }
+
+  /**
+   * Returns the letter ordinal of one of the tiles of a packed move.
+   * 
+   * @param letters The letters word of the move.
+   * @param index The index of the tile, in position order.
+   */
+  public static int getOrdinal(long letters, int index) {
+    return (int) ((letters >>> (index * TILE_BITS)) & TILE_MASK & ~BLANK_FLAG);
+  }
+
+  /**
+   * Returns true if and only if one of the tiles of a packed move is a blank.
+   * 
+   * @param letters The letters word of the move.
+   * @param index The index of the tile, in position order.
+   */
+  public static boolean isBlank(long letters, int index) {
+    return ((letters >>> (index * TILE_BITS)) & BLANK_FLAG) != 0;
+  }
+
+  /**
+   * Returns a hash code for a packed move.
+   * 
+   * @param positions The positions word of the move.
+   * @param letters The letters word of the move.
+   */
+  public static int hash(long positions, long letters) {
+    long hash = (positions ^ Long.rotateLeft(letters, 32))
+                * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  /**
+   * Returns the positions word of the given move.
+   * 
+   * @param move The move to pack. It must place at most {@link #MAX_TILES}
+   *          tiles.
+   */
+  public static long packPositions(Move move) {
+    Map<Integer, Tile> tileMap = move.getTileMap();
+    if (tileMap.size() == 1 && !move.isAcross())
+      return 1L << move.getRowOrCol();
+
+    long positions = 0;
+    for (int pos : tileMap.keySet())
+      positions |= 1L << pos;
+    return positions;
+  }
+
+  /**
+   * Returns the letters word of the given move.
+   * 
+   * @param move The move to pack. It must place at most {@link #MAX_TILES}
+   *          tiles.
+   */
+  public static long packLetters(Move move) {
+    Map<Integer, Tile> tileMap = move.getTileMap();
+    if (tileMap.size() > MAX_TILES)
+      throw new IllegalArgumentException("Cannot pack a move with "
+                                         + tileMap.size() + " tiles. A packed "
+                                         + "move has at most " + MAX_TILES
+                                         + " tiles.");
+
+    long letters;
+    if (tileMap.size() == 1 && !move.isAcross())
+      letters = newLetters(true, tileMap.keySet().iterator().next());
+    else
+      letters = newLetters(move.isAcross(), move.getRowOrCol());
+    int index = 0;
+    for (Tile tile : tileMap.values()) {
+      letters = addTile(letters, index++, tile.getLetter().getOrdinal(),
+                        tile instanceof Blank);
+    }
+    return letters;
+  }
+
+  /**
+   * Creates the {@link Move} represented by a packed move.
+   * 
+   * @param positions The positions word of the move.
+   * @param letters The letters word of the move.
+   * @param alphabet The alphabet that the move's letter ordinals refer to.
+   */
+  public static Move unpack(long positions, long letters, Alphabet alphabet) {
+    Move move = new Move(isAcross(letters), getRowOrCol(letters));
+    int index = 0;
+    for (; positions != 0; positions &= positions - 1) {
+      Letter letter = alphabet.getLetter(getOrdinal(letters, index));
+      Tile tile = isBlank(letters, index) ? new Blank(letter)
+                                          : new Tile(letter);
+      move.addTile(tile, Long.numberOfTrailingZeros(positions));
+      index++;
+    }
+    return move;
+  }
+}
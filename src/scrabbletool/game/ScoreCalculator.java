@@ -1,69 +1,121 @@
 package scrabbletool.game;
 
 import java.util.Map;
-import scrabbletool.game.board.Blank;
 import scrabbletool.game.board.Board;
 import scrabbletool.game.board.BoardUtilities;
-import scrabbletool.game.board.Modifier;
 import scrabbletool.game.board.Tile;
 
+/**
+ * Computes the scores of {@link Move}s from scratch. (The move generator scores
+ * the moves it finds incrementally, so this is only needed for moves that come
+ * from elsewhere.)
+ */
 public class ScoreCalculator {
-
+  /**
+   * Returns the score of the given move, including
+   * {@link Game#FULL_RACK_BONUS} if it places {@link Game#RACK_SIZE} tiles.
+   * The move's tiles may or may not already have been placed on the board;
+   * either way, modifiers only count for the squares that the move covers.
+   * 
+   * @param board The board to play the move on.
+   * @param move The move to score.
+   */
   public static int calculateScore(Board board, Move move) {
-    int score = 0;
-    int multiplier = 1;
+    Map<Integer, Tile> tileMap = move.getTileMap();
+    if (tileMap.isEmpty())
+      return 0;
 
     Board moveAlignedBoard = move.isAcross() ? board : board.transpose();
     Board moveOrthoBoard = moveAlignedBoard.transpose();
-
     int row = move.getRowOrCol();
-    int col = 0;
-    for (Map.Entry<Integer, Tile> mapEntry : move.getTileMap().entrySet()) {
-      col = mapEntry.getKey();
-      int crossScore = calculateWordScore(moveOrthoBoard, col, row);
-      score += crossScore;
 
-      Modifier modifier = moveAlignedBoard.get(row, col).getModifier();
-      if (modifier != null) {
-        Modifier.Type type = modifier.getType();
-        int magnitude = modifier.getMagnitude();
-        if (type == Modifier.Type.LETTER_SCORE) {
-          Tile tile = moveAlignedBoard.get(row, col).getTile();
-          score += getLetterScore(tile) * (magnitude - 1);
-        } else if (type == Modifier.Type.WORD_SCORE) {
-          score += crossScore * (magnitude - 1);
-          multiplier *= magnitude;
-        }
+    // Find the bounds of the main word, which may extend past the move's tiles
+    // in both directions. (The squares just outside the board are always
+    // empty, so the scans need no bounds checks.)
+    int wordStart = tileMap.keySet().iterator().next();
+    while (hasTile(moveAlignedBoard, tileMap, row, wordStart - 1))
+      wordStart--;
+    int wordEnd = wordStart;
+    while (hasTile(moveAlignedBoard, tileMap, row, wordEnd + 1))
+      wordEnd++;
+
+    int mainScore = 0;
+    int wordMultiplier = 1;
+    int crossScore = 0;
+    for (int col = wordStart; col <= wordEnd; col++) {
+      Tile placedTile = tileMap.get(col);
+      if (placedTile == null) {
+        // Modifiers under tiles that are already on the board don't count.
+        mainScore += moveAlignedBoard.getTileValue(row, col);
+        continue;
       }
+
+      int squareWordMultiplier = moveAlignedBoard.getWordMultiplier(row, col);
+      int letterScore = BoardUtilities.getTileValue(placedTile)
+                        * moveAlignedBoard.getLetterMultiplier(row, col);
+      mainScore += letterScore;
+      wordMultiplier *= squareWordMultiplier;
+
+      // Score the cross-word formed by this tile, if there is one.
+      int crossSum = calculateCrossSum(moveOrthoBoard, col, row);
+      if (crossSum >= 0)
+        crossScore += (crossSum + letterScore) * squareWordMultiplier;
     }
 
-    int wordScore = calculateWordScore(moveAlignedBoard, row, col);
-    score += wordScore * multiplier;
-    return score;
+    // A main word of one letter isn't a word, so it doesn't score.
+    if (wordStart == wordEnd)
+      return crossScore;
+    return mainScore * wordMultiplier + crossScore
+           + getFullRackBonus(tileMap.size());
+  }
+
+  /**
+   * Returns the bonus scored by a move that places the given number of tiles,
+   * which is {@link Game#FULL_RACK_BONUS} for a full rack and 0 otherwise.
+   * 
+   * @param numTiles The number of tiles that the move places.
+   */
+  public static int getFullRackBonus(int numTiles) {
+    return numTiles == Game.RACK_SIZE ? Game.FULL_RACK_BONUS : 0;
   }
 
-  private static int calculateWordScore(Board board,
-                                        int row,
-                                        int wordInternalPos) {
-    int wordStart = BoardUtilities.findWordBoundary(board, row,
-                                                    wordInternalPos,
-                                                    BoardUtilities.LEFT);
-    int wordEnd = BoardUtilities.findWordBoundary(board, row, wordInternalPos,
-                                                  BoardUtilities.RIGHT);
+  /**
+   * Returns the sum of the letter scores of the tiles on either side of the
+   * given position on a row, up to the nearest empty squares, or -1 if both
+   * adjacent squares are empty.
+   * 
+   * @param board The board to use.
+   * @param row The row to use.
+   * @param pos The position on the row. The tile at this position, if any, is
+   *          not counted.
+   */
+  private static int calculateCrossSum(Board board, int row, int pos) {
+    int wordStart = pos;
+    while (board.hasTile(row, wordStart - 1))
+      wordStart--;
+    int wordEnd = pos;
+    while (board.hasTile(row, wordEnd + 1))
+      wordEnd++;
 
     if (wordStart == wordEnd)
-      return 0;
+      return -1;
 
-    int wordScore = 0;
-    int col = wordStart;
-    while (col <= wordEnd)
-      wordScore += getLetterScore(board.get(row, col).getTile());
-    return wordScore;
+    int crossSum = 0;
+    for (int col = wordStart; col <= wordEnd; col++) {
+      if (col != pos)
+        crossSum += board.getTileValue(row, col);
+    }
+    return crossSum;
   }
 
-  private static int getLetterScore(Tile tile) {
-    if (tile instanceof Blank)
-      return 0;
-    return tile.getLetter().getValue();
+  /**
+   * Returns true if and only if there is a tile at the given position, either
+   * from the move or on the board.
+   */
+  private static boolean hasTile(Board board,
+                                 Map<Integer, Tile> tileMap,
+                                 int row,
+                                 int col) {
+    return tileMap.containsKey(col) || board.hasTile(row, col);
   }
 }
@@ -0,0 +1,279 @@
+package scrabbletool.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Board;
+import scrabbletool.game.board.Tile;
+
+/**
+ * <p>
+ * A multiset of tiles, used both for the bag that players draw from and for
+ * the pool of tiles that a player can't see (the bag plus the opponent's
+ * rack).
+ * </p>
+ * <p>
+ * The tiles are stored as a flat array of letter codes, with one entry per
+ * tile, alongside a count for each letter. Every tile is equally likely to be
+ * drawn, so a draw picks a random entry and swaps the last entry into its
+ * place: a weighted draw in constant time. Tiles are returned as shared
+ * instances, so drawing allocates nothing.
+ * </p>
+ * <p>
+ * {@link #copy()} is copy-on-write: the copy shares this bag's arrays until
+ * one of them is modified, so a simulation can take a fresh copy of the pool
+ * for every iteration at almost no cost. Randomness comes from a caller's
+ * {@link SplittableRandom}, which can be split into independent, reproducible
+ * streams for each thread.
+ * </p>
+ */
+public class TileBag {
+  /**
+   * The code of a blank tile. Other tiles are coded by their letter ordinals.
+   */
+  public static final int BLANK = -1;
+
+  private Tile[] tiles_;
+  private Tile blank_;
+  private byte[] codes_;
+  private int size_;
+  private int[] counts_;
+  private int numBlanks_;
+  private boolean shared_;
+
+  /**
+   * Creates a full bag, holding every tile of the given alphabet.
+   * 
+   * @param alphabet The alphabet, whose letters' counts give the number of
+   *          tiles of each letter.
+   * @throws IllegalArgumentException If the alphabet has no tiles, because its
+   *           game-type file doesn't give a tile distribution.
+   */
+  public TileBag(Alphabet alphabet) {
+    if (alphabet.getNumTiles() == 0)
+      throw new IllegalArgumentException("Cannot create a bag for an alphabet "
+                                         + "without tiles; letter counts must "
+                                         + "be given.");
+    tiles_ = new Tile[alphabet.size()];
+    for (int i = 0; i < tiles_.length; i++)
+      tiles_[i] = new Tile(alphabet.getLetter(i));
+    blank_ = new Blank();
+    codes_ = new byte[alphabet.getNumTiles()];
+    counts_ = new int[alphabet.size()];
+    size_ = 0;
+    for (int i = 0; i < tiles_.length; i++) {
+      for (int j = 0; j < alphabet.getLetter(i).getCount(); j++)
+        codes_[size_++] = (byte) i;
+      counts_[i] = alphabet.getLetter(i).getCount();
+    }
+    numBlanks_ = alphabet.getNumBlanks();
+    for (int j = 0; j < numBlanks_; j++)
+      codes_[size_++] = (byte) BLANK;
+    shared_ = false;
+  }
+
+  /**
+   * Creates a copy of the given bag, sharing its arrays.
+   */
+  private TileBag(TileBag other) {
+    tiles_ = other.tiles_;
+    blank_ = other.blank_;
+    codes_ = other.codes_;
+    size_ = other.size_;
+    counts_ = other.counts_;
+    numBlanks_ = other.numBlanks_;
+    shared_ = true;
+  }
+
+  /**
+   * Returns the tiles that the player can't see: every tile of the alphabet
+   * except those on the board and those on the player's rack.
+   * 
+   * @param alphabet The alphabet of the game.
+   * @param board The board.
+   * @param rack The player's rack.
+   * @throws IllegalArgumentException If the alphabet has no tiles, or if the
+   *           board and rack hold more of some tile than the alphabet has.
+   */
+  public static TileBag newUnseenPool(Alphabet alphabet,
+                                      Board board,
+                                      List<Tile> rack) {
+    TileBag pool = new TileBag(alphabet);
+    for (int row = 0; row < board.size(); row++) {
+      for (int col = 0; col < board.size(); col++) {
+        Tile tile = board.get(row, col).getTile();
+        if (tile != null && !pool.remove(tile))
+          throw new IllegalArgumentException("The board holds more tiles than "
+                                             + "the alphabet has.");
+      }
+    }
+    for (Tile tile : rack) {
+      if (!pool.remove(tile))
+        throw new IllegalArgumentException("The board and rack hold more "
+                                           + "tiles than the alphabet has.");
+    }
+    return pool;
+  }
+
+  /**
+   * Returns a copy of this bag. The copy shares this bag's storage until
+   * either bag is modified. Copies may be made concurrently from several
+   * threads, as long as none of them modifies this bag at the same time.
+   */
+  public TileBag copy() {
+    shared_ = true;
+    return new TileBag(this);
+  }
+
+  /**
+   * Returns the number of tiles in this bag.
+   */
+  public int size() {
+    return size_;
+  }
+
+  /**
+   * Returns true if and only if this bag has no tiles.
+   */
+  public boolean isEmpty() {
+    return size_ == 0;
+  }
+
+  /**
+   * Returns the number of tiles with the given letter in this bag.
+   * 
+   * @param ordinal The ordinal of the letter.
+   */
+  public int getCount(int ordinal) {
+    return counts_[ordinal];
+  }
+
+  /**
+   * Returns the number of blanks in this bag.
+   */
+  public int getNumBlanks() {
+    return numBlanks_;
+  }
+
+  /**
+   * Removes a random tile from this bag and returns its code, which is a
+   * letter ordinal or {@link #BLANK}.
+   * 
+   * @param random The source of randomness.
+   * @throws IllegalStateException If this bag is empty.
+   */
+  public int drawCode(SplittableRandom random) {
+    if (size_ == 0)
+      throw new IllegalStateException("Cannot draw from an empty bag.");
+    unshare();
+    int i = random.nextInt(size_);
+    int code = codes_[i];
+    codes_[i] = codes_[--size_];
+    if (code == BLANK)
+      numBlanks_--;
+    else
+      counts_[code]--;
+    return code;
+  }
+
+  /**
+   * Removes a random tile from this bag and returns it. Blanks are returned
+   * without a letter.
+   * 
+   * @param random The source of randomness.
+   * @throws IllegalStateException If this bag is empty.
+   */
+  public Tile draw(SplittableRandom random) {
+    int code = drawCode(random);
+    return code == BLANK ? blank_ : tiles_[code];
+  }
+
+  /**
+   * Draws tiles at random onto the given rack until it holds the given number
+   * of tiles or this bag is empty.
+   * 
+   * @param rack The rack to fill.
+   * @param rackSize The number of tiles on a full rack.
+   * @param random The source of randomness.
+   */
+  public void fill(List<Tile> rack, int rackSize, SplittableRandom random) {
+    while (rack.size() < rackSize && size_ > 0)
+      rack.add(draw(random));
+  }
+
+  /**
+   * Removes the given tile from this bag, if it has one. Any blank, with or
+   * without a letter, matches a blank in this bag.
+   * 
+   * @param tile The tile to remove.
+   * @return True if the tile was removed, or false if this bag has no such
+   *         tile.
+   */
+  public boolean remove(Tile tile) {
+    int code = getCode(tile);
+    if (code == BLANK ? numBlanks_ == 0 : counts_[code] == 0)
+      return false;
+    unshare();
+    int i = 0;
+    while (codes_[i] != code)
+      i++;
+    codes_[i] = codes_[--size_];
+    if (code == BLANK)
+      numBlanks_--;
+    else
+      counts_[code]--;
+    return true;
+  }
+
+  /**
+   * Puts the given tile back into this bag, for instance when it is
+   * exchanged.
+   * 
+   * @param tile The tile to add. A blank is added without its letter.
+   */
+  public void add(Tile tile) {
+    int code = getCode(tile);
+    unshare();
+    if (size_ == codes_.length) {
+      byte[] codes = new byte[Math.max(1, 2 * size_)];
+      System.arraycopy(codes_, 0, codes, 0, size_);
+      codes_ = codes;
+    }
+    codes_[size_++] = (byte) code;
+    if (code == BLANK)
+      numBlanks_++;
+    else
+      counts_[code]++;
+  }
+
+  /**
+   * Returns the tiles in this bag, in no particular order. Blanks are returned
+   * without a letter.
+   */
+  public List<Tile> getTiles() {
+    List<Tile> tiles = new ArrayList<Tile>(size_);
+    for (int i = 0; i < size_; i++)
+      tiles.add(codes_[i] == BLANK ? blank_ : tiles_[codes_[i]]);
+    return tiles;
+  }
+
+  /**
+   * Returns the code of the given tile.
+   */
+  private static int getCode(Tile tile) {
+    return tile instanceof Blank ? BLANK : tile.getLetter().getOrdinal();
+  }
+
+  /**
+   * Gives this bag its own copy of its storage, if it shares it with another
+   * bag. This must be called before any modification.
+   */
+  private void unshare() {
+    if (shared_) {
+      codes_ = codes_.clone();
+      counts_ = counts_.clone();
+      shared_ = false;
+    }
+  }
+}
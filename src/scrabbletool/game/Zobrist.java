@@ -0,0 +1,126 @@
+package scrabbletool.game;
+
+import java.util.List;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Board;
+import scrabbletool.game.board.Tile;
+
+/**
+ * <p>
+ * The keys of the 64-bit Zobrist hashes that identify game positions.
+ * </p>
+ * <p>
+ * A position's hash is the XOR of one random key for each tile on the board,
+ * chosen by its square, letter and whether it is a blank; one key for each
+ * tile on each player's rack, chosen by the player, the letter and how many
+ * copies of it the rack holds up to and including this one; and
+ * {@link #SIDE_KEY} if the second player is to move. Placing or removing a
+ * tile changes the hash by a single XOR, so a hash is kept up to date in time
+ * proportional to the number of tiles moved. {@link Board#getHash()} keeps the
+ * board's part of the hash up to date as tiles are placed.
+ * </p>
+ * <p>
+ * Rather than being stored in tables, which would have to cover every board
+ * size and alphabet, the keys are computed on demand: the key with index
+ * {@code n} is the {@code n}th output of a SplitMix64 generator with a fixed
+ * seed, which can be computed directly. The same position therefore always
+ * has the same hash, in every game and every run.
+ * </p>
+ */
+public final class Zobrist {
+  /**
+   * The key that is included in a position's hash when the second player is
+   * to move.
+   */
+  public static final long SIDE_KEY = getKey(0);
+
+  /**
+   * The number of distinct tile codes: a letter ordinal, plus a flag for
+   * blanks.
+   */
+  private static final int NUM_CODES = 2 * Long.SIZE;
+
+  /**
+   * The first key index used for tiles on racks, placed well past every index
+   * used for tiles on the board.
+   */
+  private static final long RACK_KEYS = 1L << 32;
+
+  private Zobrist() {
+  }
+
+  /**
+   * Returns the key for a tile on a square of the board.
+   * 
+   * @param row The row of the square, in the board's standard orientation.
+   * @param col The column of the square, in the board's standard orientation.
+   * @param ordinal The ordinal of the tile's letter, or of the letter that a
+   *          blank represents.
+   * @param blank True if the tile is a blank.
+   */
+  public static long getTileKey(int row, int col, int ordinal, boolean blank) {
+    int code = blank ? Long.SIZE + ordinal : ordinal;
+    return getKey(1 + ((long) row * Board.MAX_SIZE + col) * NUM_CODES + code);
+  }
+
+  /**
+   * Returns the key for the {@code count}th copy of a letter on a player's
+   * rack.
+   * 
+   * @param player The player, 0 or 1.
+   * @param ordinal The ordinal of the letter.
+   * @param count The number of copies of the letter on the rack, including
+   *          this one.
+   */
+  public static long getRackKey(int player, int ordinal, int count) {
+    return getRackKeyForCode(player, ordinal, count);
+  }
+
+  /**
+   * Returns the key for the {@code count}th blank on a player's rack.
+   * 
+   * @param player The player, 0 or 1.
+   * @param count The number of blanks on the rack, including this one.
+   */
+  public static long getRackBlankKey(int player, int count) {
+    return getRackKeyForCode(player, Long.SIZE, count);
+  }
+
+  /**
+   * Returns the rack part of a position's hash for the given player's rack.
+   * 
+   * @param player The player, 0 or 1.
+   * @param rack The tiles on the player's rack, in any order.
+   */
+  public static long getRackHash(int player, List<Tile> rack) {
+    int[] counts = new int[Long.SIZE + 1];
+    long hash = 0;
+    for (Tile tile : rack) {
+      int code = tile instanceof Blank ? Long.SIZE
+                                       : tile.getLetter().getOrdinal();
+      hash ^= getRackKeyForCode(player, code, ++counts[code]);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the key for the {@code count}th tile with the given code on a
+   * player's rack, where the code is a letter ordinal or {@link Long#SIZE}
+   * for a blank.
+   */
+  private static long getRackKeyForCode(int player, int code, int count) {
+    return getKey(RACK_KEYS + (((long) count * 2 + player) << 7) + code);
+  }
+
+  /**
+   * Returns the key with the given index.
+   */
+  private static long getKey(long index) {
+    // This is the output of SplitMix64 after |index| + 1 steps from a seed of
+    // zero.
+    long z = (index + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -3,9 +3,18 @@ package scrabbletool.game.board;
 import java.util.Map;
 import scrabbletool.Transposable2DArray;
 import scrabbletool.game.Move;
+import scrabbletool.game.Zobrist;
 
 /**
+ * <p>
  * A Scrabble board, consisting of a square array of {@link Square}s.
+ * </p>
+ * <p>
+ * The squares are backed by compact primitive arrays, which the primitive
+ * accessors such as {@link #hasTile(int, int)} and {@link #getOrdinal(int, int)}
+ * read directly. These accessors also accept positions one square outside the
+ * board, which are always empty, so word scans need no bounds checks.
+ * </p>
  * 
  * @author Philip Puryear
  */
@@ -22,13 +31,14 @@ public class Board extends Transposable2DArray<Square> {
   }
 
   /**
-   * Thrown when the board is given a size < 1.
+   * Thrown when the board is given a size < 1 or > {@link Board#MAX_SIZE}.
    */
   public static class BoardSizeException extends BoardParameterException {
     private static final long serialVersionUID = 1L;
 
     public BoardSizeException(int size) {
-      super("Cannot create board with size " + size + ". Size must be >= 1.");
+      super("Cannot create board with size " + size
+            + ". Size must be between 1 and " + MAX_SIZE + ".");
     }
   }
 
@@ -45,8 +55,25 @@ public class Board extends Transposable2DArray<Square> {
     }
   }
 
+  /**
+   * The largest supported board size, so that every row and column fits in
+   * one occupancy bitboard.
+   * 
+   * @see #getOccupancy(int)
+   */
+  public static final int MAX_SIZE = Long.SIZE;
+
+  /**
+   * The value returned by {@link #getOrdinal(int, int)} for an empty square.
+   */
+  public static final int NO_TILE = -1;
+
   private int startRow_;
   private int startCol_;
+  private BoardCells cells_;
+  private int rowStride_;
+  private int colStride_;
+  private Board transpose_;
 
   /**
    * Creates a new board with the given parameters.
@@ -59,19 +86,24 @@ public class Board extends Transposable2DArray<Square> {
    */
   public Board(int size, int startRow, int startCol) throws BoardParameterException {
     super(size, size);
-    if (size < 1)
+    if (size < 1 || size > MAX_SIZE)
       throw new BoardSizeException(size);
 
     if (startRow < 0 || startRow >= size || startCol < 0 || startCol >= size)
       throw new StartPositionException(startRow, startCol);
     startRow_ = startRow;
     startCol_ = startCol;
+    cells_ = new BoardCells(size);
+    rowStride_ = cells_.getStride();
+    colStride_ = 1;
 
     // Create a |Square| for each position on this board.
     for (int i = 0; i < size; i++) {
       for (int j = 0; j < size; j++)
-        super.set(i, j, new Square());
+        super.set(i, j, new Square(cells_, cells_.index(i, j)));
     }
+    transpose_ = new Board(super.transpose(), startCol_, startRow_, cells_,
+                           colStride_, rowStride_, this);
   }
 
   /**
@@ -81,13 +113,25 @@ public class Board extends Transposable2DArray<Square> {
    * @param squares The array of squares to use.
    * @param startRow The start row to use.
    * @param startCol The start column to use.
+   * @param cells The backing store of the squares.
+   * @param rowStride The distance between rows in {@code cells}.
+   * @param colStride The distance between columns in {@code cells}.
+   * @param transpose The board that this is the transposed view of.
    */
-  protected Board(Transposable2DArray<Square> squares,
-                  int startRow,
-                  int startCol) {
+  private Board(Transposable2DArray<Square> squares,
+                int startRow,
+                int startCol,
+                BoardCells cells,
+                int rowStride,
+                int colStride,
+                Board transpose) {
     super(squares);
     startRow_ = startRow;
     startCol_ = startCol;
+    cells_ = cells;
+    rowStride_ = rowStride;
+    colStride_ = colStride;
+    transpose_ = transpose;
   }
 
   /**
@@ -111,6 +155,143 @@ public class Board extends Transposable2DArray<Square> {
     return startCol_;
   }
 
+  /**
+   * Returns the occupancy bitboard of the given row: bit {@code i} is set if
+   * and only if there is a tile in column {@code i} of the row.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   */
+  public long getOccupancy(int row) {
+    // In a transposed view, rows are the columns of the backing store.
+    return colStride_ == 1 ? cells_.getRowOccupancy(row)
+                           : cells_.getColumnOccupancy(row);
+  }
+
+  /**
+   * Returns the {@link Zobrist} hash of the tiles on this board, which is the
+   * same in both orientations and is kept up to date as tiles are placed and
+   * removed, so it costs nothing to read.
+   */
+  public long getHash() {
+    return cells_.getHash();
+  }
+
+  /**
+   * Returns true if and only if there is a tile on the specified square.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   */
+  public boolean hasTile(int row, int col) {
+    return cells_.hasTile(index(row, col));
+  }
+
+  /**
+   * Returns the ordinal of the letter on the specified square, or
+   * {@link #NO_TILE} if the square is empty. For a blank, this is the ordinal
+   * of the letter that the blank represents.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   * @see scrabbletool.game.Letter#getOrdinal()
+   */
+  public int getOrdinal(int row, int col) {
+    return cells_.getOrdinal(index(row, col));
+  }
+
+  /**
+   * Returns true if and only if there is a blank on the specified square.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   */
+  public boolean isBlank(int row, int col) {
+    return cells_.isBlank(index(row, col));
+  }
+
+  /**
+   * Returns the score value of the tile on the specified square, which is zero
+   * for blanks and empty squares.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   */
+  public int getTileValue(int row, int col) {
+    return cells_.getTileValue(index(row, col));
+  }
+
+  /**
+   * Returns the letter multiplier of the specified square, which is 1 unless
+   * the square has a letter-score modifier.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   */
+  public int getLetterMultiplier(int row, int col) {
+    return cells_.getLetterMultiplier(index(row, col));
+  }
+
+  /**
+   * Returns the word multiplier of the specified square, which is 1 unless the
+   * square has a word-score modifier.
+   * 
+   * @param row The row index, from -1 to {@code size()}.
+   * @param col The column index, from -1 to {@code size()}.
+   */
+  public int getWordMultiplier(int row, int col) {
+    return cells_.getWordMultiplier(index(row, col));
+  }
+
+  /**
+   * Returns a new board with the same size, start position, modifiers and
+   * tiles as this one, in the same orientation. The copy shares no state with
+   * this board, so it can be modified (for instance, by another thread)
+   * without affecting this one.
+   */
+  public Board copy() {
+    if (colStride_ != 1) {
+      // This is a transposed view, whose start position is already swapped,
+      // so copy the standard board and return the copy's transposed view.
+      return transpose_.copy().transpose();
+    }
+    Board copy;
+    try {
+      copy = new Board(size(), startRow_, startCol_);
+    } catch (BoardParameterException e) {
+      // This board's parameters are valid, so this can't happen.
+      throw new RuntimeException(e);
+    }
+    for (int row = 0; row < size(); row++) {
+      for (int col = 0; col < size(); col++)
+        copy.get(row, col).setModifier(get(row, col).getModifier());
+    }
+    copy.copyTilesFrom(this);
+    return copy;
+  }
+
+  /**
+   * Replaces the tiles on this board with the tiles on the given board. Only
+   * the squares whose tiles differ are modified.
+   * 
+   * @param other The board to copy the tiles from, which must be the same size
+   *          as this one.
+   */
+  public void copyTilesFrom(Board other) {
+    if (other.size() != size())
+      throw new IllegalArgumentException("Cannot copy the tiles of a board of "
+                                         + "size " + other.size()
+                                         + " to a board of size " + size()
+                                         + ".");
+    for (int row = 0; row < size(); row++) {
+      for (int col = 0; col < size(); col++) {
+        Tile tile = other.get(row, col).getTile();
+        Square square = get(row, col);
+        if (square.getTile() != tile)
+          square.placeTile(tile);
+      }
+    }
+  }
+
   /**
    * Plays a move on this board.
    * 
@@ -125,8 +306,33 @@ public class Board extends Transposable2DArray<Square> {
     }
   }
 
+  /**
+   * Removes the tiles of a move from this board, undoing
+   * {@link #playMove(Move)}.
+   * 
+   * @param move The move to remove, which must be the last move played.
+   */
+  public void removeMove(Move move) {
+    Board board = move.isAcross() ? this : this.transpose();
+    int row = move.getRowOrCol();
+    for (int col : move.getTileMap().keySet())
+      board.get(row, col).placeTile(null);
+  }
+
+  /**
+   * Returns the transposed view of this board, which is backed by this board.
+   * No new objects are created by this operation.
+   */
   @Override
   public Board transpose() {
-    return new Board(super.transpose(), startCol_, startRow_);
+    return transpose_;
+  }
+
+  /**
+   * Returns the index of the specified square in the backing store, taking
+   * the orientation of this view into account.
+   */
+  private int index(int row, int col) {
+    return rowStride_ + colStride_ + row * rowStride_ + col * colStride_;
   }
 }
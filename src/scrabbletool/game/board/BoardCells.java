@@ -0,0 +1,201 @@
+package scrabbletool.game.board;
+
+import scrabbletool.game.Zobrist;
+
+/**
+ * <p>
+ * The primitive backing store of a {@link Board}. The tiles, tile values and
+ * modifiers of every square are kept in flat {@code byte} arrays, which are
+ * written through by the board's {@link Square}s and read directly by the
+ * board's primitive accessors.
+ * </p>
+ * <p>
+ * The arrays cover the board plus a one-square border on every side. Border
+ * squares are always empty and have no modifier, so a scan along a row or
+ * column stops at the edge of the board without any bounds checks.
+ * </p>
+ * <p>
+ * The store also keeps an occupancy bitboard for every row and every column,
+ * with bit {@code i} set if the {@code i}th square of the line has a tile.
+ * These are padded with an empty line on either side, like the arrays.
+ * </p>
+ * <p>
+ * Finally, the store keeps the {@link Zobrist} hash of the tiles on the board,
+ * which is updated as each tile is placed or removed.
+ * </p>
+ */
+class BoardCells {
+  /**
+   * The encoding of an empty square.
+   */
+  private static final byte EMPTY = 0;
+
+  /**
+   * The bit that is set in the encoding of a square holding a blank.
+   */
+  private static final int BLANK_FLAG = 0x80;
+
+  private int stride_;
+  private byte[] tiles_;
+  private byte[] values_;
+  private byte[] letterMultipliers_;
+  private byte[] wordMultipliers_;
+  private long[] rowOccupancy_;
+  private long[] colOccupancy_;
+  private long hash_;
+
+  /**
+   * Creates a store of empty squares with no modifiers.
+   * 
+   * @param size The number of rows and columns on the board, which must be at
+   *          most {@link Board#MAX_SIZE}.
+   */
+  public BoardCells(int size) {
+    stride_ = size + 2;
+    int numCells = stride_ * stride_;
+    tiles_ = new byte[numCells];
+    values_ = new byte[numCells];
+    letterMultipliers_ = new byte[numCells];
+    wordMultipliers_ = new byte[numCells];
+    for (int i = 0; i < numCells; i++) {
+      tiles_[i] = EMPTY;
+      letterMultipliers_[i] = 1;
+      wordMultipliers_[i] = 1;
+    }
+    rowOccupancy_ = new long[stride_];
+    colOccupancy_ = new long[stride_];
+  }
+
+  /**
+   * Returns the distance between vertically adjacent squares in the arrays.
+   */
+  public int getStride() {
+    return stride_;
+  }
+
+  /**
+   * Returns the index of the specified square in the arrays. The row and column
+   * may lie on the border.
+   * 
+   * @param row The row index, from -1 to the board size.
+   * @param col The column index, from -1 to the board size.
+   */
+  public int index(int row, int col) {
+    return (row + 1) * stride_ + col + 1;
+  }
+
+  /**
+   * Returns the occupancy bitboard of the given row.
+   * 
+   * @param row The row index, from -1 to the board size.
+   */
+  public long getRowOccupancy(int row) {
+    return rowOccupancy_[row + 1];
+  }
+
+  /**
+   * Returns the occupancy bitboard of the given column.
+   * 
+   * @param col The column index, from -1 to the board size.
+   */
+  public long getColumnOccupancy(int col) {
+    return colOccupancy_[col + 1];
+  }
+
+  /**
+   * Returns the Zobrist hash of the tiles in this store.
+   */
+  public long getHash() {
+    return hash_;
+  }
+
+  /**
+   * Returns true if and only if the square at the given index has a tile.
+   */
+  public boolean hasTile(int index) {
+    return tiles_[index] != EMPTY;
+  }
+
+  /**
+   * Returns the ordinal of the letter on the square at the given index, or
+   * {@link Board#NO_TILE} if the square is empty.
+   */
+  public int getOrdinal(int index) {
+    return (tiles_[index] & ~BLANK_FLAG & 0xFF) - 1;
+  }
+
+  /**
+   * Returns true if and only if the square at the given index has a blank.
+   */
+  public boolean isBlank(int index) {
+    return (tiles_[index] & BLANK_FLAG) != 0;
+  }
+
+  /**
+   * Returns the score value of the tile on the square at the given index, which
+   * is zero for blanks and empty squares.
+   */
+  public int getTileValue(int index) {
+    return values_[index];
+  }
+
+  /**
+   * Returns the letter multiplier of the square at the given index.
+   */
+  public int getLetterMultiplier(int index) {
+    return letterMultipliers_[index];
+  }
+
+  /**
+   * Returns the word multiplier of the square at the given index.
+   */
+  public int getWordMultiplier(int index) {
+    return wordMultipliers_[index];
+  }
+
+  /**
+   * Records the tile on the square at the given index.
+   * 
+   * @param index The index of the square.
+   * @param tile The tile on the square, or {@code null} if it is empty.
+   */
+  public void setTile(int index, Tile tile) {
+    // The bitboards are indexed by board position, not by array index.
+    int row = index / stride_ - 1;
+    int col = index % stride_ - 1;
+    if (tiles_[index] != EMPTY)
+      hash_ ^= Zobrist.getTileKey(row, col, getOrdinal(index), isBlank(index));
+    if (tile == null) {
+      tiles_[index] = EMPTY;
+      values_[index] = 0;
+      rowOccupancy_[row + 1] &= ~(1L << col);
+      colOccupancy_[col + 1] &= ~(1L << row);
+    } else {
+      int code = tile.getLetter().getOrdinal() + 1;
+      if (tile instanceof Blank)
+        code |= BLANK_FLAG;
+      tiles_[index] = (byte) code;
+      hash_ ^= Zobrist.getTileKey(row, col, getOrdinal(index), isBlank(index));
+      values_[index] = (byte) BoardUtilities.getTileValue(tile);
+      rowOccupancy_[row + 1] |= 1L << col;
+      colOccupancy_[col + 1] |= 1L << row;
+    }
+  }
+
+  /**
+   * Records the modifier of the square at the given index.
+   * 
+   * @param index The index of the square.
+   * @param modifier The modifier of the square, or {@code null} if it has none.
+   */
+  public void setModifier(int index, Modifier modifier) {
+    letterMultipliers_[index] = 1;
+    wordMultipliers_[index] = 1;
+    if (modifier != null) {
+      if (modifier.getType() == Modifier.Type.LETTER_SCORE)
+        letterMultipliers_[index] = (byte) modifier.getMagnitude();
+      else if (modifier.getType() == Modifier.Type.WORD_SCORE)
+        wordMultipliers_[index] = (byte) modifier.getMagnitude();
+    }
+  }
+}
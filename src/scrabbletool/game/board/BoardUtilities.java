@@ -35,10 +35,20 @@ public class BoardUtilities {
                                      int row,
                                      int internalPos,
                                      int dir) {
+    // The squares just outside the board are always empty, so the scan needs
+    // no bounds checks.
     int col = internalPos;
-    while (board.isValidPosition(row, col)
-           && board.get(row, col).getTile() != null)
+    while (board.hasTile(row, col))
       col += dir;
     return col - dir;
   }
+
+  /**
+   * Returns the score value of the given tile, which is zero for blanks.
+   * 
+   * @param tile The tile to use.
+   */
+  public static int getTileValue(Tile tile) {
+    return tile instanceof Blank ? 0 : tile.getLetter().getValue();
+  }
 }
@@ -4,18 +4,26 @@ import scrabbletool.Transposable;
 
 /**
  * A {@code Square} is a location on the {@link Board}. It may have a
- * {@link Tile} and/or a {@link Modifier}.
+ * {@link Tile} and/or a {@link Modifier}. Changes to a square are written
+ * through to the {@link BoardCells} of its board.
  */
 public class Square implements Transposable<Square> {
   private Tile _tile;
   private Modifier _modifier;
+  private BoardCells _cells;
+  private int _index;
 
   /**
    * Creates a new square with no tile and no modifier.
+   * 
+   * @param cells The backing store of the board.
+   * @param index The index of this square in {@code cells}.
    */
-  Square() {
+  Square(BoardCells cells, int index) {
     _tile = null;
     _modifier = null;
+    _cells = cells;
+    _index = index;
   }
 
   /**
@@ -41,6 +49,7 @@ public class Square implements Transposable<Square> {
    */
   public void placeTile(Tile tile) {
     _tile = tile;
+    _cells.setTile(_index, tile);
   }
 
   /**
@@ -50,6 +59,7 @@ public class Square implements Transposable<Square> {
    */
   public void setModifier(Modifier modifier) {
     _modifier = modifier;
+    _cells.setModifier(_index, modifier);
   }
 
   @Override
@@ -0,0 +1,565 @@
+package scrabbletool.game.endgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import scrabbletool.game.Alphabet;
+import scrabbletool.game.Game;
+import scrabbletool.game.Move;
+import scrabbletool.game.MoveBuffer;
+import scrabbletool.game.PackedMove;
+import scrabbletool.game.Zobrist;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Board;
+import scrabbletool.game.board.Tile;
+import scrabbletool.game.movegen.MoveGenerator;
+
+/**
+ * <p>
+ * Finds the best move in an endgame, when the bag is empty and each player
+ * knows the other's rack, by searching the game tree to the end of the game.
+ * </p>
+ * <p>
+ * The search is a negamax alpha-beta search over the point spread between
+ * the players, run with iterative deepening until either a search reaches the
+ * end of the game along every line or the time budget runs out. Positions at
+ * the depth limit are scored as even. Moves are tried in order of score, after
+ * the best move found for the position by the previous iteration, which is
+ * kept in a {@link TranspositionTable} along with the position's value and
+ * keyed by a {@link Zobrist} hash of the board, both racks and the player to
+ * move. The game ends when a player plays out, scoring twice the value of the
+ * other rack, or when both players pass in a row, when each loses the value of
+ * their own rack.
+ * </p>
+ * <p>
+ * The whole search runs on one copy of the game's board: moves are made and
+ * unmade with {@link MoveGenerator#makeMove(Move)} and
+ * {@link MoveGenerator#unmakeMove(Move)}, and the racks and hash are updated
+ * in place.
+ * </p>
+ */
+public class EndgameSolver {
+  /**
+   * The default time budget, in milliseconds.
+   */
+  public static final long DEFAULT_TIME_BUDGET = 1000;
+
+  /**
+   * The default maximum search depth, in plies.
+   */
+  public static final int DEFAULT_MAX_DEPTH = 32;
+
+  /**
+   * The default number of transposition table entries.
+   */
+  public static final int DEFAULT_TABLE_SIZE = 1 << 20;
+
+  /**
+   * The result of solving an endgame.
+   */
+  public static class Result {
+    private Move move_;
+    private int score_;
+    private int spread_;
+    private int depth_;
+    private boolean exact_;
+    private long numNodes_;
+
+    private Result(Move move,
+                   int score,
+                   int spread,
+                   int depth,
+                   boolean exact,
+                   long numNodes) {
+      move_ = move;
+      score_ = score;
+      spread_ = spread;
+      depth_ = depth;
+      exact_ = exact;
+      numNodes_ = numNodes;
+    }
+
+    /**
+     * Returns the best move, or {@code null} if the best move is to pass.
+     */
+    public Move getMove() {
+      return move_;
+    }
+
+    /**
+     * Returns the score of the best move.
+     */
+    public int getScore() {
+      return score_;
+    }
+
+    /**
+     * Returns the player's points minus the opponent's points from here to the
+     * end of the game, including the best move itself, if both players play
+     * perfectly.
+     */
+    public int getSpread() {
+      return spread_;
+    }
+
+    /**
+     * Returns the depth, in plies, of the deepest completed search.
+     */
+    public int getDepth() {
+      return depth_;
+    }
+
+    /**
+     * Returns true if and only if the search reached the end of the game along
+     * every line, so that the spread is exact. Otherwise the time budget or
+     * depth limit ran out first.
+     */
+    public boolean isExact() {
+      return exact_;
+    }
+
+    /**
+     * Returns the number of positions searched.
+     */
+    public long getNumNodes() {
+      return numNodes_;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("score %d, spread %d, depth %d%s, %d nodes",
+                           score_, spread_, depth_, exact_ ? " (exact)" : "",
+                           numNodes_);
+    }
+  }
+
+  private static final int INFINITY = 1 << 24;
+
+  /**
+   * The key that is included in a position's hash when the previous ply was a
+   * pass, since a second pass ends the game.
+   */
+  private static final long PASS_KEY = 0x6A09E667F3BCC909L;
+
+  // The layout of a transposition table entry. The bound is never 0, so no
+  // entry is equal to |TranspositionTable.MISSING|.
+  private static final int DEPTH_SHIFT = 32;
+  private static final int BOUND_SHIFT = 40;
+  private static final int MOVE_SHIFT = 42;
+  private static final int EXACT = 1;
+  private static final int LOWER_BOUND = 2;
+  private static final int UPPER_BOUND = 3;
+
+  /**
+   * The depth stored for a position whose value was found without reaching
+   * the depth limit, so that it holds at any depth.
+   */
+  private static final int COMPLETE_DEPTH = 0xFF;
+
+  /**
+   * The number of positions between checks of the clock.
+   */
+  private static final int CLOCK_INTERVAL = 256;
+
+  private Game game_;
+  private Alphabet alphabet_;
+  private TranspositionTable table_;
+  private long timeBudgetMillis_;
+  private int maxDepth_;
+
+  private Tile[] tiles_;
+  private Tile blank_;
+
+  // The state of the current search.
+  private Board board_;
+  private MoveGenerator moveGen_;
+  private MoveBuffer[] buffers_;
+  private int[][] orders_;
+  private List<List<Tile>> rackLists_;
+  private int[][] rackCounts_;
+  private int[] rackSizes_;
+  private int[] rackValues_;
+  private int side_;
+  // The racks' and the player to move's part of the position's hash.
+  private long hash_;
+  private int rootBest_;
+  private long numNodes_;
+  private long numHorizonNodes_;
+  private long deadline_;
+  private boolean canAbort_;
+  private boolean aborted_;
+
+  /**
+   * Creates a new solver.
+   * 
+   * @param game The game whose current position is solved.
+   * @param tableSize The number of transposition table entries.
+   */
+  public EndgameSolver(Game game, int tableSize) {
+    game_ = game;
+    alphabet_ = game.getAlphabet();
+    table_ = new TranspositionTable(tableSize);
+    timeBudgetMillis_ = DEFAULT_TIME_BUDGET;
+    maxDepth_ = DEFAULT_MAX_DEPTH;
+
+    tiles_ = new Tile[alphabet_.size()];
+    for (int i = 0; i < tiles_.length; i++)
+      tiles_[i] = new Tile(alphabet_.getLetter(i));
+    blank_ = new Blank();
+  }
+
+  /**
+   * Sets the time after which the search stops and returns the result of the
+   * deepest completed iteration. The first iteration always completes.
+   * 
+   * @param timeBudgetMillis The time budget in milliseconds, or 0 for no
+   *          limit.
+   */
+  public void setTimeBudget(long timeBudgetMillis) {
+    timeBudgetMillis_ = timeBudgetMillis;
+  }
+
+  /**
+   * Sets the maximum search depth.
+   * 
+   * @param maxDepth The maximum depth, in plies.
+   */
+  public void setMaxDepth(int maxDepth) {
+    if (maxDepth < 1 || maxDepth >= COMPLETE_DEPTH)
+      throw new IllegalArgumentException("Cannot search to depth " + maxDepth
+                                         + ". The depth must be between 1 "
+                                         + "and " + (COMPLETE_DEPTH - 1) + ".");
+    maxDepth_ = maxDepth;
+  }
+
+  /**
+   * Removes every position from the transposition table.
+   */
+  public void clear() {
+    table_.clear();
+  }
+
+  /**
+   * Finds the best move for the player from the game's current position. The
+   * game's board is not modified.
+   * 
+   * @param rack The player's rack.
+   * @param opponentRack The opponent's rack.
+   * @return The best move and its value.
+   * @throws IllegalArgumentException If either rack is empty or has more than
+   *           {@link PackedMove#MAX_TILES} tiles.
+   */
+  public Result solve(List<Tile> rack, List<Tile> opponentRack) {
+    checkRack(rack);
+    checkRack(opponentRack);
+    long startTime = System.nanoTime();
+    Game game = game_.copy();
+    board_ = game.getBoard();
+    moveGen_ = new MoveGenerator(game, game.getGADDAG());
+    buffers_ = new MoveBuffer[maxDepth_];
+    orders_ = new int[maxDepth_][1024];
+    rackLists_ = new ArrayList<List<Tile>>(maxDepth_);
+    for (int i = 0; i < maxDepth_; i++) {
+      buffers_[i] = new MoveBuffer();
+      rackLists_.add(new ArrayList<Tile>(PackedMove.MAX_TILES));
+    }
+
+    // Set up the racks. The board keeps its own part of the hash.
+    hash_ = 0;
+    rackCounts_ = new int[2][alphabet_.size() + 1];
+    rackSizes_ = new int[2];
+    rackValues_ = new int[2];
+    side_ = 0;
+    setRack(0, rack);
+    setRack(1, opponentRack);
+
+    numNodes_ = 0;
+    deadline_ = timeBudgetMillis_ == 0 ? 0 : startTime + timeBudgetMillis_
+                                                        * 1000000;
+    canAbort_ = false;
+    aborted_ = false;
+    Result result = null;
+    for (int depth = 1; depth <= maxDepth_; depth++) {
+      numHorizonNodes_ = 0;
+      int spread = search(depth, -INFINITY, INFINITY, 0, false);
+      if (aborted_)
+        break;
+
+      MoveBuffer buffer = buffers_[0];
+      boolean pass = rootBest_ == buffer.size();
+      result = new Result(pass ? null : buffer.getMove(rootBest_, alphabet_),
+                          pass ? 0 : buffer.getScore(rootBest_), spread,
+                          depth, numHorizonNodes_ == 0, numNodes_);
+      if (result.isExact())
+        break;
+      canAbort_ = true;
+    }
+    board_ = null;
+    moveGen_ = null;
+    return result;
+  }
+
+  /**
+   * Searches the current position, and returns its value to the player to
+   * move: their points minus their opponent's points from here to the end of
+   * the game. Values outside the window ({@code alpha}, {@code beta}) are only
+   * bounds on the true value.
+   * 
+   * @param depth The number of plies left to search.
+   * @param alpha The value that the player to move is already assured of.
+   * @param beta The value that the opponent is already assured of.
+   * @param ply The number of plies from the root.
+   * @param passed True if the previous ply was a pass.
+   */
+  private int search(int depth, int alpha, int beta, int ply, boolean passed) {
+    if (++numNodes_ % CLOCK_INTERVAL == 0 && canAbort_ && deadline_ != 0
+        && System.nanoTime() - deadline_ > 0)
+      aborted_ = true;
+    if (aborted_)
+      return 0;
+
+    // Look the position up. The root is always searched, so that its best
+    // move is known.
+    long key = board_.getHash() ^ (passed ? hash_ ^ PASS_KEY : hash_);
+    long entry = table_.get(key);
+    int bestIndex = -1;
+    if (entry != TranspositionTable.MISSING) {
+      int entryDepth = (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+      if (ply > 0 && entryDepth >= depth) {
+        // A value found by a search that reached the depth limit only holds
+        // to that depth.
+        if (entryDepth != COMPLETE_DEPTH)
+          numHorizonNodes_++;
+        int value = (int) entry;
+        int bound = (int) (entry >>> BOUND_SHIFT) & 0x3;
+        if (bound == EXACT)
+          return value;
+        if (bound == LOWER_BOUND)
+          alpha = Math.max(alpha, value);
+        else
+          beta = Math.min(beta, value);
+        if (alpha >= beta)
+          return value;
+      }
+      bestIndex = (int) (entry >>> MOVE_SHIFT) - 1;
+    }
+
+    if (depth == 0) {
+      numHorizonNodes_++;
+      return 0;
+    }
+
+    MoveBuffer buffer = buffers_[ply];
+    buffer.clear();
+    moveGen_.generate(getRack(side_, ply), buffer);
+    buffer.sortByScore();
+
+    // The last move is a pass. The table's best move is tried first, then the
+    // moves that play out, since they end the game at once, and then the rest
+    // in order of score.
+    int numMoves = buffer.size() + 1;
+    if (bestIndex >= numMoves)
+      bestIndex = -1;
+    int[] order = getOrder(buffer, bestIndex, ply);
+    int originalAlpha = alpha;
+    long originalHorizonNodes = numHorizonNodes_;
+    int best = -INFINITY;
+    int bestMove = 0;
+    for (int n = 0; n < numMoves; n++) {
+      int i = order[n];
+
+      int value;
+      if (i == buffer.size())
+        value = searchPass(depth, alpha, beta, ply, passed);
+      else
+        value = searchMove(buffer, i, depth, alpha, beta, ply);
+      if (aborted_)
+        return 0;
+
+      if (value > best) {
+        best = value;
+        bestMove = i;
+      }
+      if (best > alpha)
+        alpha = best;
+      if (alpha >= beta)
+        break;
+    }
+
+    int bound = best <= originalAlpha ? UPPER_BOUND
+                                      : best >= beta ? LOWER_BOUND : EXACT;
+    int entryDepth = numHorizonNodes_ == originalHorizonNodes ? COMPLETE_DEPTH
+                                                              : depth;
+    table_.put(key, (best & 0xFFFFFFFFL) | ((long) entryDepth << DEPTH_SHIFT)
+                    | ((long) bound << BOUND_SHIFT)
+                    | ((long) (bestMove + 1) << MOVE_SHIFT));
+    if (ply == 0)
+      rootBest_ = bestMove;
+    return best;
+  }
+
+  /**
+   * Returns the order in which to try the moves in the given buffer, followed
+   * by the pass, in an array that is reused for the given ply.
+   */
+  private int[] getOrder(MoveBuffer buffer, int bestIndex, int ply) {
+    int numMoves = buffer.size() + 1;
+    int[] order = orders_[ply];
+    if (order.length < numMoves)
+      order = orders_[ply] = new int[Math.max(numMoves, 2 * order.length)];
+    int n = 0;
+    if (bestIndex >= 0)
+      order[n++] = bestIndex;
+    int rackSize = rackSizes_[side_];
+    for (int i = 0; i < buffer.size(); i++) {
+      if (i != bestIndex
+          && PackedMove.getNumTiles(buffer.getPositions(i)) == rackSize)
+        order[n++] = i;
+    }
+    for (int i = 0; i <= buffer.size(); i++) {
+      if (i != bestIndex
+          && (i == buffer.size()
+              || PackedMove.getNumTiles(buffer.getPositions(i)) != rackSize))
+        order[n++] = i;
+    }
+    return order;
+  }
+
+  /**
+   * Passes, and returns the value of the resulting position to the player who
+   * passed.
+   */
+  private int searchPass(int depth, int alpha, int beta, int ply, boolean passed) {
+    // Two passes in a row end the game, and each player loses the value of
+    // their rack.
+    if (passed)
+      return rackValues_[1 - side_] - rackValues_[side_];
+
+    switchSides();
+    int value = -search(depth - 1, -beta, -alpha, ply + 1, true);
+    switchSides();
+    return value;
+  }
+
+  /**
+   * Makes the move at the given index of the buffer, and returns the value of
+   * the resulting position to the player who made it, including the move's
+   * score.
+   */
+  private int searchMove(MoveBuffer buffer,
+                         int index,
+                         int depth,
+                         int alpha,
+                         int beta,
+                         int ply) {
+    long positions = buffer.getPositions(index);
+    long letters = buffer.getLetters(index);
+    int score = buffer.getScore(index);
+    int side = side_;
+
+    // A move that plays out ends the game, and a move to the depth limit
+    // leaves an even position, so neither needs to be made on the board.
+    if (PackedMove.getNumTiles(positions) == rackSizes_[side])
+      return score + 2 * rackValues_[1 - side];
+    if (depth == 1) {
+      numHorizonNodes_++;
+      return score;
+    }
+
+    Move move = buffer.getMove(index, alphabet_);
+    updateTiles(side, positions, letters, -1);
+    moveGen_.makeMove(move);
+    // The opponent's value is from their point of view, so the window is
+    // negated, and shifted by the move's score.
+    switchSides();
+    int value = score - search(depth - 1, score - beta, score - alpha, ply + 1,
+                               false);
+    switchSides();
+    moveGen_.unmakeMove(move);
+    updateTiles(side, positions, letters, 1);
+    return value;
+  }
+
+  /**
+   * Moves the tiles of a packed move between the given player's rack and the
+   * board, updating the rack and its part of the hash.
+   * 
+   * @param side The player who makes the move.
+   * @param positions The positions word of the move.
+   * @param letters The letters word of the move.
+   * @param delta -1 to take the tiles from the rack, or 1 to put them back.
+   */
+  private void updateTiles(int side, long positions, long letters, int delta) {
+    int numTiles = PackedMove.getNumTiles(positions);
+    for (int index = 0; index < numTiles; index++) {
+      int ordinal = PackedMove.getOrdinal(letters, index);
+      boolean blank = PackedMove.isBlank(letters, index);
+      updateRack(side, blank ? alphabet_.size() : ordinal, delta);
+    }
+  }
+
+  /**
+   * Adds a tile to, or removes one from, the given player's rack, updating
+   * the hash.
+   * 
+   * @param side The player.
+   * @param code The ordinal of the tile's letter, or the alphabet's size for a
+   *          blank.
+   * @param delta 1 to add the tile, or -1 to remove it.
+   */
+  private void updateRack(int side, int code, int delta) {
+    // The key for the n-th copy of a tile is included while the rack has at
+    // least n copies.
+    int[] counts = rackCounts_[side];
+    int count = delta > 0 ? ++counts[code] : counts[code]--;
+    hash_ ^= code < alphabet_.size() ? Zobrist.getRackKey(side, code, count)
+                                     : Zobrist.getRackBlankKey(side, count);
+    rackSizes_[side] += delta;
+    if (code < alphabet_.size())
+      rackValues_[side] += delta * alphabet_.getLetter(code).getValue();
+  }
+
+  /**
+   * Replaces the given player's rack with the given tiles.
+   */
+  private void setRack(int side, List<Tile> rack) {
+    for (Tile tile : rack)
+      updateRack(side, tile instanceof Blank ? alphabet_.size()
+                                             : tile.getLetter().getOrdinal(), 1);
+  }
+
+  /**
+   * Returns the tiles of the given player's rack, in a list that is reused
+   * for the given ply.
+   */
+  private List<Tile> getRack(int side, int ply) {
+    List<Tile> rack = rackLists_.get(ply);
+    rack.clear();
+    int[] counts = rackCounts_[side];
+    for (int ordinal = 0; ordinal < tiles_.length; ordinal++) {
+      for (int i = 0; i < counts[ordinal]; i++)
+        rack.add(tiles_[ordinal]);
+    }
+    for (int i = 0; i < counts[tiles_.length]; i++)
+      rack.add(blank_);
+    return rack;
+  }
+
+  /**
+   * Gives the turn to the other player.
+   */
+  private void switchSides() {
+    side_ = 1 - side_;
+    hash_ ^= Zobrist.SIDE_KEY;
+  }
+
+  /**
+   * Checks that a rack can be searched.
+   */
+  private static void checkRack(List<Tile> rack) {
+    if (rack.isEmpty() || rack.size() > PackedMove.MAX_TILES)
+      throw new IllegalArgumentException("Cannot solve an endgame with a rack "
+                                         + "of " + rack.size() + " tiles. "
+                                         + "Racks must have between 1 and "
+                                         + PackedMove.MAX_TILES + " tiles.");
+  }
+}
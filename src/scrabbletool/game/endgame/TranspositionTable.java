@@ -0,0 +1,93 @@
+package scrabbletool.game.endgame;
+
+/**
+ * <p>
+ * A fixed-size hash table of search results, keyed by 64-bit position hashes.
+ * </p>
+ * <p>
+ * Each entry is a pair of {@code long}s in a single flat array: the data, and
+ * the key XORed with the data. An entry is only returned if the two words of
+ * its slot XOR back to the requested key, so an entry torn by a concurrent
+ * write, or one that belongs to another position, is simply treated as
+ * missing. This lets many threads read and write the table at once without
+ * any locks. Each key maps to one slot, and a new entry always replaces the
+ * old one.
+ * </p>
+ */
+public class TranspositionTable {
+  /**
+   * The value returned for a key with no entry. Callers must never store this
+   * value.
+   */
+  public static final long MISSING = 0;
+
+  private long[] slots_;
+  private int mask_;
+
+  /**
+   * Creates an empty table.
+   * 
+   * @param numEntries The maximum number of entries, which is rounded up to a
+   *          power of two.
+   */
+  public TranspositionTable(int numEntries) {
+    if (numEntries < 1 || numEntries > 1 << 29)
+      throw new IllegalArgumentException("Cannot create a table of "
+                                         + numEntries + " entries. Tables "
+                                         + "must have between 1 and 2^29 "
+                                         + "entries.");
+    int size = Integer.highestOneBit(numEntries);
+    if (size < numEntries)
+      size <<= 1;
+    slots_ = new long[2 * size];
+    mask_ = size - 1;
+  }
+
+  /**
+   * Returns the number of entries that this table can hold.
+   */
+  public int capacity() {
+    return mask_ + 1;
+  }
+
+  /**
+   * Returns the data stored for the given key, or {@link #MISSING} if there is
+   * none.
+   * 
+   * @param key The hash of the position.
+   */
+  public long get(long key) {
+    int i = index(key);
+    long data = slots_[i];
+    return (slots_[i + 1] ^ data) == key ? data : MISSING;
+  }
+
+  /**
+   * Stores data for the given key, replacing whatever was in its slot.
+   * 
+   * @param key The hash of the position.
+   * @param data The data to store, which must not be {@link #MISSING}.
+   */
+  public void put(long key, long data) {
+    int i = index(key);
+    slots_[i] = data;
+    slots_[i + 1] = key ^ data;
+  }
+
+  /**
+   * Removes every entry from this table.
+   */
+  public void clear() {
+    for (int i = 0; i < slots_.length; i++)
+      slots_[i] = 0;
+  }
+
+  /**
+   * Returns the index of the first word of the given key's slot.
+   */
+  private int index(long key) {
+    // The low bits of a position hash are as random as the high bits, but
+    // folding them together costs nothing.
+    return (int) ((key ^ (key >>> 32)) & mask_) << 1;
+  }
+}
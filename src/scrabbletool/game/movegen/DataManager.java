@@ -1,12 +1,9 @@
 package scrabbletool.game.movegen;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
-import scrabbletool.Transposable2DArray;
-import scrabbletool.gaddag.Arc;
-import scrabbletool.gaddag.GADDAG;
+import scrabbletool.gaddag.PackedGADDAG;
 import scrabbletool.game.Alphabet;
-import scrabbletool.game.Letter;
 import scrabbletool.game.Move;
 import scrabbletool.game.board.Board;
 import scrabbletool.game.board.BoardUtilities;
@@ -18,30 +15,82 @@ import scrabbletool.game.board.Tile;
  * @author Philip Puryear
  */
 class DataManager {
-  private Transposable2DArray<SquareData> squareData_;
+  private SquareData squareData_;
   private Board board_;
-  private GADDAG gaddag_;
+  private PackedGADDAG gaddag_;
   private AnchorUpdater anchorUpdater_;
   private CrossSetUpdater crossSetUpdater_;
 
+  // The undo journal. While any moves are marked, every cross-set and
+  // cross-sum that is overwritten is saved here, along with the view and the
+  // square it was written through, so that it can be restored by |undo|.
+  // |marks_| holds the journal size at the start of each marked move.
+  private int[] marks_;
+  private int numMarks_;
+  private SquareData[] journalViews_;
+  private int[] journalRows_;
+  private int[] journalCols_;
+  private long[] journalSets_;
+  private int[] journalSums_;
+  private int journalSize_;
+
   /**
-   * Creates a new data manager.
+   * Creates a new data manager for the given board, which may already have
+   * tiles on it.
    * 
-   * @param game The game to be played.
+   * @param board The game board.
+   * @param gaddag The dictionary structure.
+   * @param alphabet The alphabet of the dictionary.
    */
-  public DataManager(Board board, GADDAG gaddag, Alphabet alphabet) {
+  public DataManager(Board board, PackedGADDAG gaddag, Alphabet alphabet) {
     board_ = board;
     gaddag_ = gaddag;
 
-    // Instantiate an array of |SquareData|.
-    int boardSize = board_.size();
-    squareData_ = new Transposable2DArray<SquareData>(boardSize, boardSize);
-    for (int i = 0; i < boardSize - 1; i++) {
-      for (int j = 0; j < boardSize - 1; j++)
-        squareData_.set(i, j, new SquareData(alphabet.getLetters()));
-    }
+    squareData_ = new SquareData(board_.size(), alphabet.getMask());
     anchorUpdater_ = new AnchorUpdater();
     crossSetUpdater_ = new CrossSetUpdater();
+    anchorUpdater_.update();
+    crossSetUpdater_.updateAll();
+
+    marks_ = new int[16];
+    numMarks_ = 0;
+    journalViews_ = new SquareData[64];
+    journalRows_ = new int[journalViews_.length];
+    journalCols_ = new int[journalViews_.length];
+    journalSets_ = new long[journalViews_.length];
+    journalSums_ = new int[journalViews_.length];
+    journalSize_ = 0;
+  }
+
+  /**
+   * Starts recording the changes made by the next update, so that they can be
+   * reverted by {@link #undo()}. Marks nest, so several moves can be made and
+   * then undone in reverse order.
+   */
+  public void mark() {
+    if (numMarks_ == marks_.length)
+      marks_ = Arrays.copyOf(marks_, 2 * numMarks_);
+    marks_[numMarks_++] = journalSize_;
+  }
+
+  /**
+   * Reverts the move generation data to its state when {@link #mark()} was
+   * last called, given that the tiles of the moves played since then have
+   * been removed from the board.
+   */
+  public void undo() {
+    int mark = marks_[--numMarks_];
+    while (journalSize_ > mark) {
+      int i = --journalSize_;
+      journalViews_[i].setDownSet(journalRows_[i], journalCols_[i],
+                                  journalSets_[i]);
+      journalViews_[i].setDownSum(journalRows_[i], journalCols_[i],
+                                  journalSums_[i]);
+      journalViews_[i] = null;
+    }
+    // Anchors are cheap to recompute from the board, so they aren't
+    // journaled.
+    anchorUpdater_.update();
   }
 
   /**
@@ -51,8 +100,24 @@ class DataManager {
    * @param move The move that was played.
    */
   public void update(Move move) {
-    anchorUpdater_.update(move);
-    crossSetUpdater_.update(move);
+    long startTime = GenerationStats.ENABLED ? System.nanoTime() : 0;
+    UpdateEvent event = new UpdateEvent();
+    event.begin();
+    anchorUpdater_.update();
+    int squaresTouched = crossSetUpdater_.update(move);
+
+    if (event.shouldCommit()) {
+      event.across = move.isAcross();
+      event.rowOrCol = move.getRowOrCol();
+      event.tilesPlaced = move.getTileMap().size();
+      event.squaresTouched = squaresTouched;
+      event.commit();
+    }
+    if (GenerationStats.ENABLED) {
+      GenerationStats.get().addCrossSets(squaresTouched);
+      GenerationStats.get().getUpdateLatency()
+                     .record(System.nanoTime() - startTime);
+    }
   }
 
   /**
@@ -64,118 +129,88 @@ class DataManager {
   }
 
   /**
-   * Returns the {@link SquareData} at the given row and column.
-   * 
-   * @param row The row index.
-   * @param col The column index.
+   * Returns the {@link SquareData} for the board, in the current orientation.
    */
-  public SquareData getSquareData(int row, int col) {
-    return squareData_.get(row, col);
+  public SquareData getSquareData() {
+    return squareData_;
   }
 
   /**
-   * Anchor management logic is factored into this subclass.
+   * Anchor management logic is factored into this subclass. Anchors are
+   * recomputed for the whole board at once from the board's occupancy
+   * bitboards, a row at a time.
    */
   private class AnchorUpdater {
     /**
-     * Updates the anchor data for this game, given that the specified move has
-     * been played on the board.
-     * 
-     * @param move The move that was played.
+     * Recomputes the anchor data for this game from the tiles on the board.
      */
-    public void update(Move move) {
-      // If the move is down, simply transpose the board so we can pretend that
-      // it's across.
-      if (!move.isAcross())
-        transpose();
-
-      int row = move.getRowOrCol();
-      int col = 0;
-      for (Map.Entry<Integer, Tile> mapEntry : move.getTileMap().entrySet()) {
-        // Update the anchors for the current tile, the tile above, and the tile
-        // below.
-        col = mapEntry.getKey();
-        updateAnchors(row, col);
-        if (row > 0)
-          updateAnchors(row - 1, col);
-        if (row < board_.size() - 1)
-          updateAnchors(row + 1, col);
+    public void update() {
+      // Down anchors are the across anchors of the transposed board.
+      boolean empty = updateAcrossAnchors(board_, squareData_);
+      updateAcrossAnchors(board_.transpose(), squareData_.transpose());
+
+      // The first move must cover the start square, so on an empty board that
+      // square is the only anchor, in both directions.
+      if (empty) {
+        squareData_.setAcrossAnchors(board_.getStartRow(),
+                                     1L << board_.getStartCol());
+        squareData_.setDownAnchors(board_.getStartCol(),
+                                   1L << board_.getStartRow());
       }
-
-      // Update the anchors on the square immediately left of the play.
-      int wordLeftBound = BoardUtilities.findWordBoundary(board_, row, col,
-                                                          BoardUtilities.LEFT) - 1;
-      if (wordLeftBound >= 0)
-        updateAnchors(row, wordLeftBound);
-
-      // Update the anchors on the square immediately right of the play.
-      int wordRightBound = BoardUtilities.findWordBoundary(board_, row, col,
-                                                           BoardUtilities.RIGHT) + 1;
-      if (wordRightBound < board_.size())
-        updateAnchors(row, wordRightBound);
-
-      // Transpose the board back to its original orientation, if necessary.
-      if (!move.isAcross())
-        transpose();
     }
 
     /**
-     * Updates the anchors on the specified square.
+     * Recomputes the across anchors of every row of the given board.
      * 
-     * @param row The row index.
-     * @param col The column index.
+     * @param board The board to use.
+     * @param squareData The data to store the anchors in.
+     * @return True if and only if the board has no tiles.
      */
-    private void updateAnchors(int row, int col) {
-      Tile tileAbove = row > 0 ? board_.get(row - 1, col).getTile() : null;
-      Tile tileLeft = col > 0 ? board_.get(row, col - 1).getTile() : null;
-
-      SquareData.Anchor anchor = squareData_.get(row, col).getAnchor();
-      if (board_.get(row, col).getTile() != null) {
-        // If there is a tile on this square, then we are only an across anchor
-        // if the square immediately left of us is empty.
-        anchor.setAcrossAnchor(tileLeft == null);
-
-        // Similarly, we are only an down anchor if the square immediately
-        // above us is empty.
-        anchor.setDownAnchor(tileAbove == null);
-      } else {
-        // If there is no tile on this square, then we need to take all of the
-        // surrounding tiles into account.
-        Tile tileBelow = null;
-        if (row < board_.size() - 1)
-          tileBelow = board_.get(row + 1, col).getTile();
-
-        Tile tileRight = null;
-        if (col < board_.size() - 1)
-          tileRight = board_.get(row, col + 1).getTile();
-
-        // We are only an across anchor if there is a tile either above or below
-        // us AND there is no tile either to the left or the right.
-        anchor.setAcrossAnchor((tileAbove != null || tileBelow != null)
-                               && (tileLeft == null && tileRight == null));
-
-        // The down anchor is set according to the transpose of the above logic.
-        anchor.setDownAnchor((tileLeft != null || tileRight != null)
-                             && (tileAbove == null && tileBelow == null));
+    private boolean updateAcrossAnchors(Board board, SquareData squareData) {
+      long allOccupied = 0;
+      for (int row = 0; row < board.size(); row++) {
+        // Bit |col| of |leftOccupied| is set if the square left of |col| has
+        // a tile, and similarly for |rightOccupied|. The rows just outside the
+        // board are always empty.
+        long occupied = board.getOccupancy(row);
+        long leftOccupied = occupied << 1;
+        long rightOccupied = occupied >>> 1;
+        long verticalNeighbors = board.getOccupancy(row - 1)
+                                 | board.getOccupancy(row + 1);
+
+        // A square with a tile is an anchor if the square immediately left of
+        // it is empty. An empty square is an anchor if there is a tile either
+        // above or below it AND there is no tile either to the left or the
+        // right.
+        long anchors = (occupied & ~leftOccupied)
+                       | (verticalNeighbors & ~occupied & ~leftOccupied
+                          & ~rightOccupied);
+        squareData.setAcrossAnchors(row, anchors);
+        allOccupied |= occupied;
       }
+      return allOccupied == 0;
     }
   }
 
   /**
-   * Cross-set management logic is factored into this subclass.
+   * Cross-set and cross-sum management logic is factored into this subclass.
    */
   private class CrossSetUpdater {
-    private Arc arc_;
+    private int arc_;
     private int row_;
     private int col_;
+    private int numCrossSets_;
 
     /**
-     * Updates the cross-set data for this game, given that the specified move
-     * has been played on the board.
+     * Updates the cross-set and cross-sum data for this game, given that the
+     * specified move has been played on the board.
      * 
      * @param move The move that was played.
+     * @return The number of squares whose cross-sets were recomputed.
      */
-    public void update(Move move) {
+    public int update(Move move) {
+      numCrossSets_ = 0;
+
       // If the move is across, then we'll be looking at column word-formations
       // first, so transpose the board.
       if (move.isAcross())
@@ -199,10 +234,30 @@ class DataManager {
       // Transpose the board back to its original state.
       if (!move.isAcross())
         transpose();
+      return numCrossSets_;
+    }
+
+    /**
+     * Computes the cross-set and cross-sum data for the boundary squares of
+     * every word on the board, in both directions. Every other square keeps
+     * its initial data.
+     */
+    public void updateAll() {
+      for (int pass = 0; pass < 2; pass++) {
+        for (int row = 0; row < board_.size(); row++) {
+          // Find the first square of each run of tiles on the row.
+          long occupied = board_.getOccupancy(row);
+          long wordStarts = occupied & ~(occupied << 1);
+          for (; wordStarts != 0; wordStarts &= wordStarts - 1)
+            update(row, Long.numberOfTrailingZeros(wordStarts));
+        }
+        transpose();
+      }
     }
 
     /**
-     * Updates the cross-sets for the word-boundary squares of the given word.
+     * Updates the cross-sets and cross-sums for the word-boundary squares of
+     * the given word.
      * 
      * @param row The row that this word is located on.
      * @param letterPos Any internal column of the word.
@@ -210,6 +265,8 @@ class DataManager {
     private void update(int row, int letterPos) {
       arc_ = gaddag_.getRootArc();
       row_ = row;
+      int wordStart = BoardUtilities.findWordBoundary(board_, row, letterPos,
+                                                      BoardUtilities.LEFT);
       int wordEnd = BoardUtilities.findWordBoundary(board_, row, letterPos,
                                                     BoardUtilities.RIGHT);
       col_ = wordEnd;
@@ -217,12 +274,15 @@ class DataManager {
       // Travel along the GADDAG to the left word boundary.
       traverseToWordBoundary(BoardUtilities.LEFT);
 
-      // Find the cross-set at the left boundary.
+      // Find the cross-set at the left boundary. (If the traversal fell off
+      // the GADDAG, it stopped short of the boundary.)
+      col_ = wordStart - 1;
       if (col_ >= 0)
         computeCrossSet(BoardUtilities.LEFT);
 
       // Switch to the suffix sub-graph.
-      arc_ = arc_.getDestination().getArc(GADDAG.DELIMITER);
+      if (arc_ != PackedGADDAG.NO_ARC)
+        arc_ = gaddag_.getDelimiterArc(arc_);
 
       // Find the cross-set at the right boundary.
       col_ = wordEnd + 1;
@@ -238,47 +298,103 @@ class DataManager {
      *          {@link BoardUtilities#LEFT} or {@link BoardUtilities#RIGHT}.
      */
     private void computeCrossSet(int direction) {
-      Set<Letter> crossSet = squareData_.get(row_, col_).getCrossSet()
-                                        .getDownSet();
-      crossSet.clear();
-
-      // If there is no tile immediately to the (left or right, according to
-      // |direction|), then the cross-set on this tile is equal to the
-      // letter-set on the current arc.
-      if (!board_.isValidPosition(row_, col_ + direction)
-          || board_.get(row_, col_ + direction).getTile() == null) {
-        crossSet.addAll(arc_.getLetterSet());
+      numCrossSets_++;
+      if (numMarks_ > 0)
+        saveCrossSet();
+      squareData_.setDownSum(row_, col_, computeCrossSum());
+
+      if (arc_ == PackedGADDAG.NO_ARC) {
+        // If the GADDAG has no path for the word, then no letter can extend
+        // it.
+        squareData_.setDownSet(row_, col_, 0);
+      } else if (!board_.hasTile(row_, col_ + direction)) {
+        // If there is no tile immediately to the (left or right, according to
+        // |direction|), then the cross-set on this tile is equal to the
+        // letter-set on the current arc.
+        squareData_.setDownSet(row_, col_, gaddag_.getLetterSet(arc_));
       } else {
-        // Otherwise, we must try every possible letter and see if we can reach
-        // the /next/ word boundary by following the GADDAG. If we can, then the
-        // letter we tried is part of the cross-set.
-        Arc oldArc = arc_;
+        // Otherwise, we must try every letter that continues the path and see
+        // if the tiles up to the /next/ word boundary complete a word. If they
+        // do, then the letter we tried is part of the cross-set.
+        int oldArc = arc_;
         int oldCol = col_;
-        for (Letter letter : arc_.getLetterSet()) {
-          arc_ = gaddag_.getArc(arc_.getDestination(), letter);
-          traverseToWordBoundary(direction);
-          if (arc_ != null)
-            crossSet.add(letter);
-          col_ = oldCol;
-          arc_ = oldArc;
+        long letters = gaddag_.getOutgoingLetters(oldArc);
+        long downSet = 0;
+        for (; letters != 0; letters &= letters - 1) {
+          int ordinal = Long.numberOfTrailingZeros(letters);
+          arc_ = gaddag_.getArc(oldArc, ordinal);
+          col_ = oldCol + direction;
+          if (completesWord(direction))
+            downSet |= 1L << ordinal;
         }
+        col_ = oldCol;
+        arc_ = oldArc;
+        squareData_.setDownSet(row_, col_, downSet);
+      }
+    }
+
+    /**
+     * Saves the cross-set and cross-sum of the current square in the undo
+     * journal.
+     */
+    private void saveCrossSet() {
+      if (journalSize_ == journalViews_.length) {
+        int capacity = 2 * journalSize_;
+        journalViews_ = Arrays.copyOf(journalViews_, capacity);
+        journalRows_ = Arrays.copyOf(journalRows_, capacity);
+        journalCols_ = Arrays.copyOf(journalCols_, capacity);
+        journalSets_ = Arrays.copyOf(journalSets_, capacity);
+        journalSums_ = Arrays.copyOf(journalSums_, capacity);
+      }
+      int i = journalSize_++;
+      journalViews_[i] = squareData_;
+      journalRows_[i] = row_;
+      journalCols_[i] = col_;
+      journalSets_[i] = squareData_.getDownSet(row_, col_);
+      journalSums_[i] = squareData_.getDownSum(row_, col_);
+    }
+
+    /**
+     * Returns the total value of the tiles on either side of the current
+     * (empty) square, up to the nearest empty squares.
+     */
+    private int computeCrossSum() {
+      int sum = 0;
+      for (int col = col_ - 1; board_.hasTile(row_, col); col--)
+        sum += board_.getTileValue(row_, col);
+      for (int col = col_ + 1; board_.hasTile(row_, col); col++)
+        sum += board_.getTileValue(row_, col);
+      return sum;
+    }
+
+    /**
+     * Follows the GADDAG along the tiles starting at the current square, and
+     * returns true if and only if they complete a word at the next empty
+     * square.
+     * 
+     * @param dir The direction to traverse on the board.
+     */
+    private boolean completesWord(int dir) {
+      while (board_.hasTile(row_, col_ + dir)) {
+        arc_ = gaddag_.getArc(arc_, board_.getOrdinal(row_, col_));
+        if (arc_ == PackedGADDAG.NO_ARC)
+          return false;
+        col_ += dir;
       }
+      return gaddag_.hasLetter(arc_, board_.getOrdinal(row_, col_));
     }
 
     /**
      * Using the letters on the board, traverses the GADDAG until an empty
      * square is reached. If the GADDAG does not contain a path for the letters,
-     * then this function will set {@code arc_} to {@code null} and return
-     * early.
+     * then this function will set {@code arc_} to {@link PackedGADDAG#NO_ARC}
+     * and return early.
      * 
      * @param dir The direction to traverse on the board.
      */
     private void traverseToWordBoundary(int dir) {
-      while (board_.isValidPosition(row_, col_) && arc_ != null) {
-        Tile tile = board_.get(row_, col_).getTile();
-        if (tile == null)
-          break;
-        arc_ = gaddag_.getArc(arc_.getDestination(), tile.getLetter());
+      while (board_.hasTile(row_, col_) && arc_ != PackedGADDAG.NO_ARC) {
+        arc_ = gaddag_.getArc(arc_, board_.getOrdinal(row_, col_));
         col_ += dir;
       }
     }
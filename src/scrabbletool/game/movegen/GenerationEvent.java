@@ -0,0 +1,36 @@
+package scrabbletool.game.movegen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for one call that generates moves. Its fields are
+ * only filled in if the event is being recorded.
+ */
+@Name("scrabbletool.MoveGeneration")
+@Label("Move Generation")
+@Category("ScrabbleTool")
+@Description("Generating every move for a rack")
+final class GenerationEvent extends jdk.jfr.Event {
+  @Label("Rack")
+  @Description("The rack's letters, with ? for each blank")
+  String rack;
+
+  @Label("Tiles On Board")
+  int tilesOnBoard;
+
+  @Label("Anchors")
+  int anchors;
+
+  @Label("Moves")
+  int moves;
+
+  @Label("Packed")
+  @Description("Whether the moves were added to a move buffer")
+  boolean packed;
+
+  @Label("Parallel")
+  boolean parallel;
+}
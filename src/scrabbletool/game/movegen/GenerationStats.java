@@ -0,0 +1,265 @@
+package scrabbletool.game.movegen;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Counters and latency histograms for move generation and for the updates made
+ * after each move, shared by every {@link MoveGenerator} in the JVM and
+ * published as an MBean named {@value #OBJECT_NAME}.
+ * </p>
+ * <p>
+ * Statistics are only kept if the system property {@value #ENABLED_PROPERTY}
+ * is "true" when this class is loaded. Every use is guarded by the constant
+ * {@link #ENABLED}, so when it is false the JIT compiler removes the
+ * instrumentation entirely. When it is true, the generator counts into plain
+ * fields during a search and adds them to the shared counters once per call.
+ * The shared counters are striped, so concurrent generators don't contend.
+ * </p>
+ */
+public class GenerationStats implements GenerationStatsMBean {
+  /**
+   * The system property that enables the statistics.
+   */
+  public static final String ENABLED_PROPERTY = "scrabbletool.stats";
+
+  /**
+   * True if and only if statistics are being kept.
+   */
+  public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /**
+   * The name under which the statistics are registered with the platform
+   * MBean server.
+   */
+  public static final String OBJECT_NAME = "scrabbletool:type=GenerationStats";
+
+  /**
+   * A histogram of latencies, with one bucket for each power of two
+   * nanoseconds.
+   */
+  public static class LatencyHistogram {
+    private LongAdder[] buckets_;
+    private LongAdder count_;
+    private LongAdder totalNanos_;
+
+    private LatencyHistogram() {
+      buckets_ = new LongAdder[Long.SIZE];
+      for (int i = 0; i < buckets_.length; i++)
+        buckets_[i] = new LongAdder();
+      count_ = new LongAdder();
+      totalNanos_ = new LongAdder();
+    }
+
+    /**
+     * Adds a latency to this histogram.
+     * 
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(long nanos) {
+      // Bucket |i| holds latencies below 2^i nanoseconds.
+      int bucket = Math.min(Long.SIZE - Long.numberOfLeadingZeros(nanos),
+                            buckets_.length - 1);
+      buckets_[bucket].increment();
+      count_.increment();
+      totalNanos_.add(nanos);
+    }
+
+    /**
+     * Returns the number of latencies in this histogram.
+     */
+    public long getCount() {
+      return count_.sum();
+    }
+
+    /**
+     * Returns the mean latency, in nanoseconds, or 0 if there are none.
+     */
+    public double getMean() {
+      long count = count_.sum();
+      return count == 0 ? 0 : (double) totalNanos_.sum() / count;
+    }
+
+    /**
+     * Returns an upper bound on the given percentile of the latencies, in
+     * nanoseconds. The bound is within a factor of two of the true value.
+     * 
+     * @param percentile The percentile, between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+      long[] counts = new long[buckets_.length];
+      long count = 0;
+      for (int i = 0; i < buckets_.length; i++) {
+        counts[i] = buckets_[i].sum();
+        count += counts[i];
+      }
+      long rank = (long) Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0)
+          return 1L << i;
+      }
+      return 0;
+    }
+
+    /**
+     * Removes every latency from this histogram.
+     */
+    public void reset() {
+      for (LongAdder bucket : buckets_)
+        bucket.reset();
+      count_.reset();
+      totalNanos_.reset();
+    }
+  }
+
+  private static final GenerationStats INSTANCE = new GenerationStats();
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer()
+                         .registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+      } catch (JMException e) {
+        // The statistics are still kept, just not published.
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private LongAdder arcsFollowed_ = new LongAdder();
+  private LongAdder nodesVisited_ = new LongAdder();
+  private LongAdder movesRecorded_ = new LongAdder();
+  private LongAdder duplicatesRejected_ = new LongAdder();
+  private LongAdder anchorsProcessed_ = new LongAdder();
+  private LongAdder crossSetsComputed_ = new LongAdder();
+  private LatencyHistogram generateLatency_ = new LatencyHistogram();
+  private LatencyHistogram updateLatency_ = new LatencyHistogram();
+
+  private GenerationStats() {
+  }
+
+  /**
+   * Returns the statistics for this JVM.
+   */
+  public static GenerationStats get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Adds the counts of one generation pass to the totals.
+   */
+  void addSearch(long arcsFollowed,
+                 long nodesVisited,
+                 long movesRecorded,
+                 long duplicatesRejected,
+                 long anchorsProcessed) {
+    arcsFollowed_.add(arcsFollowed);
+    nodesVisited_.add(nodesVisited);
+    movesRecorded_.add(movesRecorded);
+    duplicatesRejected_.add(duplicatesRejected);
+    anchorsProcessed_.add(anchorsProcessed);
+  }
+
+  /**
+   * Adds the given number of recomputed cross-sets to the total.
+   */
+  void addCrossSets(long crossSetsComputed) {
+    crossSetsComputed_.add(crossSetsComputed);
+  }
+
+  /**
+   * Returns the latencies of the calls that generated moves.
+   */
+  public LatencyHistogram getGenerateLatency() {
+    return generateLatency_;
+  }
+
+  /**
+   * Returns the latencies of the updates made after moves were played.
+   */
+  public LatencyHistogram getUpdateLatency() {
+    return updateLatency_;
+  }
+
+  @Override
+  public long getArcsFollowed() {
+    return arcsFollowed_.sum();
+  }
+
+  @Override
+  public long getNodesVisited() {
+    return nodesVisited_.sum();
+  }
+
+  @Override
+  public long getMovesRecorded() {
+    return movesRecorded_.sum();
+  }
+
+  @Override
+  public long getDuplicatesRejected() {
+    return duplicatesRejected_.sum();
+  }
+
+  @Override
+  public long getAnchorsProcessed() {
+    return anchorsProcessed_.sum();
+  }
+
+  @Override
+  public long getCrossSetsComputed() {
+    return crossSetsComputed_.sum();
+  }
+
+  @Override
+  public long getGenerateCount() {
+    return generateLatency_.getCount();
+  }
+
+  @Override
+  public double getGenerateMeanMicros() {
+    return generateLatency_.getMean() / 1e3;
+  }
+
+  @Override
+  public double getGenerateP50Micros() {
+    return generateLatency_.getPercentile(50) / 1e3;
+  }
+
+  @Override
+  public double getGenerateP99Micros() {
+    return generateLatency_.getPercentile(99) / 1e3;
+  }
+
+  @Override
+  public long getUpdateCount() {
+    return updateLatency_.getCount();
+  }
+
+  @Override
+  public double getUpdateMeanMicros() {
+    return updateLatency_.getMean() / 1e3;
+  }
+
+  @Override
+  public double getUpdateP99Micros() {
+    return updateLatency_.getPercentile(99) / 1e3;
+  }
+
+  @Override
+  public void reset() {
+    arcsFollowed_.reset();
+    nodesVisited_.reset();
+    movesRecorded_.reset();
+    duplicatesRejected_.reset();
+    anchorsProcessed_.reset();
+    crossSetsComputed_.reset();
+    generateLatency_.reset();
+    updateLatency_.reset();
+  }
+}
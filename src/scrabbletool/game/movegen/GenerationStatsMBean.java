@@ -0,0 +1,82 @@
+package scrabbletool.game.movegen;
+
+/**
+ * The management interface of {@link GenerationStats}, through which the move
+ * generation counters are published over JMX. All counts are totals since the
+ * statistics were last reset.
+ */
+public interface GenerationStatsMBean {
+  /**
+   * Returns the number of GADDAG arcs followed by the move generator.
+   */
+  public long getArcsFollowed();
+
+  /**
+   * Returns the number of nodes visited in the move generator's search.
+   */
+  public long getNodesVisited();
+
+  /**
+   * Returns the number of moves passed to handlers or buffers.
+   */
+  public long getMovesRecorded();
+
+  /**
+   * Returns the number of moves that were found but rejected, because the same
+   * move is reported elsewhere in the search.
+   */
+  public long getDuplicatesRejected();
+
+  /**
+   * Returns the number of anchor squares searched.
+   */
+  public long getAnchorsProcessed();
+
+  /**
+   * Returns the number of cross-sets recomputed after moves were played.
+   */
+  public long getCrossSetsComputed();
+
+  /**
+   * Returns the number of calls that generated moves.
+   */
+  public long getGenerateCount();
+
+  /**
+   * Returns the mean latency of a generation call, in microseconds.
+   */
+  public double getGenerateMeanMicros();
+
+  /**
+   * Returns an upper bound on the median latency of a generation call, in
+   * microseconds.
+   */
+  public double getGenerateP50Micros();
+
+  /**
+   * Returns an upper bound on the 99th percentile latency of a generation call,
+   * in microseconds.
+   */
+  public double getGenerateP99Micros();
+
+  /**
+   * Returns the number of updates made after moves were played.
+   */
+  public long getUpdateCount();
+
+  /**
+   * Returns the mean latency of an update, in microseconds.
+   */
+  public double getUpdateMeanMicros();
+
+  /**
+   * Returns an upper bound on the 99th percentile latency of an update, in
+   * microseconds.
+   */
+  public double getUpdateP99Micros();
+
+  /**
+   * Sets every counter and histogram back to zero.
+   */
+  public void reset();
+}
@@ -0,0 +1,469 @@
+package scrabbletool.game.movegen;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import scrabbletool.game.LeaveTable;
+import scrabbletool.game.MoveBuffer;
+import scrabbletool.game.Zobrist;
+import scrabbletool.game.board.Board;
+
+/**
+ * <p>
+ * A cache of the moves generated for positions, so that a position that is
+ * analyzed again doesn't have to be searched again. Install one with
+ * {@link MoveGenerator#setCache(MoveCache)}; the moves passed to a
+ * {@link MoveBuffer} are then looked up here first.
+ * </p>
+ * <p>
+ * A position is identified by the {@link Zobrist} hash of its board, from
+ * {@link Board#getHash()}, and the {@link LeaveTable} key of its rack, which
+ * is the same for every ordering of the same tiles. The moves are stored in
+ * the {@link scrabbletool.game.PackedMove} encoding, in the order in which
+ * they were generated, using about {@value #BYTES_PER_MOVE} bytes per move.
+ * The moves also depend on the lexicon and on the board's layout, which are
+ * not part of the key, so a cache must only be shared by generators that use
+ * the same GADDAG and the same board layout.
+ * </p>
+ * <p>
+ * The cache holds at most a given number of bytes. The entries are spread over
+ * a fixed number of segments by hash, each with its own lock and an equal
+ * share of the bytes, so threads looking up different positions rarely
+ * contend. Within a segment, the least recently used entries are evicted to
+ * make room for new ones, but only if the new entry has been requested more
+ * often than every entry it would replace. This admission policy (TinyLFU)
+ * keeps positions that recur, such as those revisited by simulations, from
+ * being flushed out by a stream of positions that are only seen once. Request
+ * frequencies are estimated by a count-min sketch of 4-bit counters in each
+ * segment, which are all halved periodically so that old requests are
+ * forgotten.
+ * </p>
+ * <p>
+ * A position whose moves are missing when several threads request it at once
+ * is generated by each of them; the first result to be stored is kept.
+ * </p>
+ */
+public class MoveCache implements MoveCacheMBean {
+  /**
+   * The estimated memory used by each cached move, in bytes.
+   */
+  public static final int BYTES_PER_MOVE = 2 * Long.BYTES + Integer.BYTES;
+
+  /**
+   * The estimated memory used by each entry in addition to its moves, in bytes:
+   * the key, the map entry and the headers of the move arrays.
+   */
+  public static final int BYTES_PER_ENTRY = 128;
+
+  /**
+   * The default number of segments.
+   */
+  public static final int DEFAULT_NUM_SEGMENTS = 16;
+
+  /**
+   * The size of a typical entry, in bytes, which sets the size of each
+   * segment's frequency sketch.
+   */
+  private static final int TYPICAL_ENTRY_BYTES = 8192;
+
+  /**
+   * The key of a cache entry.
+   */
+  private static class Key {
+    private long boardHash_;
+    private long rackKey_;
+
+    public Key(long boardHash, long rackKey) {
+      boardHash_ = boardHash;
+      rackKey_ = rackKey;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key))
+        return false;
+      Key otherKey = (Key) other;
+      return boardHash_ == otherKey.boardHash_ && rackKey_ == otherKey.rackKey_;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(boardHash_ ^ rackKey_ * 0x9E3779B97F4A7C15L);
+    }
+  }
+
+  /**
+   * The moves of one position, copied out of a {@link MoveBuffer}.
+   */
+  private static class Moves {
+    private long[] positions_;
+    private long[] letters_;
+    private int[] scores_;
+
+    public Moves(MoveBuffer buffer, int start) {
+      int size = buffer.size() - start;
+      positions_ = new long[size];
+      letters_ = new long[size];
+      scores_ = new int[size];
+      for (int i = 0; i < size; i++) {
+        positions_[i] = buffer.getPositions(start + i);
+        letters_[i] = buffer.getLetters(start + i);
+        scores_[i] = buffer.getScore(start + i);
+      }
+    }
+
+    /**
+     * Appends these moves to the given buffer.
+     */
+    public void addTo(MoveBuffer buffer) {
+      for (int i = 0; i < scores_.length; i++)
+        buffer.add(positions_[i], letters_[i], scores_[i]);
+    }
+
+    /**
+     * Returns the estimated memory used by this entry, in bytes.
+     */
+    public long getBytes() {
+      return BYTES_PER_ENTRY + (long) scores_.length * BYTES_PER_MOVE;
+    }
+  }
+
+  /**
+   * A count-min sketch of how often each key has been requested recently.
+   * Each key has a 4-bit counter in each of four rows, and its estimated
+   * frequency is the smallest of them.
+   */
+  private static class FrequencySketch {
+    private static final long[] SEEDS = { 0xC3A5C85C97CB3127L,
+                                          0xB492B66FBE98F273L,
+                                          0x9AE16A3B2F90404FL,
+                                          0xCBF29CE484222325L };
+    private static final int MAX_COUNT = 15;
+
+    private long[] table_;
+    private int mask_;
+    private int additions_;
+    private int sampleSize_;
+
+    /**
+     * Creates a sketch sized for the given number of distinct keys.
+     */
+    public FrequencySketch(int expectedKeys) {
+      // Each |long| holds 16 counters, so this gives each key about four
+      // counters per row.
+      int size = Integer.highestOneBit(Math.max(expectedKeys, 8) - 1) << 1;
+      table_ = new long[size];
+      mask_ = size - 1;
+      sampleSize_ = 10 * size;
+    }
+
+    /**
+     * Returns the estimated number of recent requests for the given key hash,
+     * from 0 to 15.
+     */
+    public int frequency(long hash) {
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < SEEDS.length; i++) {
+        long h = rehash(hash, i);
+        int offset = (int) (h & 15) << 2;
+        int count = (int) (table_[index(h)] >>> offset) & MAX_COUNT;
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    /**
+     * Records a request for the given key hash.
+     */
+    public void increment(long hash) {
+      boolean added = false;
+      for (int i = 0; i < SEEDS.length; i++) {
+        long h = rehash(hash, i);
+        int offset = (int) (h & 15) << 2;
+        int index = index(h);
+        if (((table_[index] >>> offset) & MAX_COUNT) != MAX_COUNT) {
+          table_[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++additions_ == sampleSize_)
+        halve();
+    }
+
+    /**
+     * Halves every counter, so that recent requests outweigh older ones.
+     */
+    private void halve() {
+      for (int i = 0; i < table_.length; i++)
+        table_[i] = (table_[i] >>> 1) & 0x7777777777777777L;
+      additions_ /= 2;
+    }
+
+    /**
+     * Returns the independent hash of the given key hash for the given row.
+     */
+    private static long rehash(long hash, int row) {
+      long h = (hash + SEEDS[row]) * 0x9E3779B97F4A7C15L;
+      return h ^ (h >>> 29);
+    }
+
+    /**
+     * Returns the index of the word holding a counter, from its hash.
+     */
+    private int index(long h) {
+      return (int) (h >>> 32) & mask_;
+    }
+  }
+
+  /**
+   * A part of the cache, with its own lock, entries and frequency sketch.
+   */
+  private static class Segment {
+    private LinkedHashMap<Key, Moves> entries_;
+    private FrequencySketch sketch_;
+    private long bytes_;
+    private long maxBytes_;
+
+    public Segment(long maxBytes) {
+      // Iterating in access order puts the least recently used entry first.
+      entries_ = new LinkedHashMap<Key, Moves>(16, 0.75f, true);
+      sketch_ = new FrequencySketch((int) Math.min(maxBytes
+                                                   / TYPICAL_ENTRY_BYTES,
+                                                   1 << 24));
+      bytes_ = 0;
+      maxBytes_ = maxBytes;
+    }
+  }
+
+  private Segment[] segments_;
+  private long maxBytes_;
+  private LongAdder hits_ = new LongAdder();
+  private LongAdder misses_ = new LongAdder();
+  private LongAdder evictions_ = new LongAdder();
+  private LongAdder rejections_ = new LongAdder();
+
+  /**
+   * Creates an empty cache with {@link #DEFAULT_NUM_SEGMENTS} segments.
+   * 
+   * @param maxBytes The largest number of bytes that the entries may use.
+   */
+  public MoveCache(long maxBytes) {
+    this(maxBytes, DEFAULT_NUM_SEGMENTS);
+  }
+
+  /**
+   * Creates an empty cache.
+   * 
+   * @param maxBytes The largest number of bytes that the entries may use.
+   * @param numSegments The number of independently locked parts of the
+   *          cache, which is rounded up to a power of two. No entry may be
+   *          larger than one segment's share of the bytes.
+   */
+  public MoveCache(long maxBytes, int numSegments) {
+    if (maxBytes < 1)
+      throw new IllegalArgumentException("Cannot create a cache of " + maxBytes
+                                         + " bytes. Caches must hold at "
+                                         + "least one byte.");
+    if (numSegments < 1 || numSegments > 1 << 16)
+      throw new IllegalArgumentException("Cannot create a cache with "
+                                         + numSegments + " segments. Caches "
+                                         + "must have between 1 and 2^16 "
+                                         + "segments.");
+    int size = Integer.highestOneBit(numSegments);
+    if (size < numSegments)
+      size <<= 1;
+    segments_ = new Segment[size];
+    for (int i = 0; i < size; i++)
+      segments_[i] = new Segment(maxBytes / size);
+    maxBytes_ = maxBytes;
+  }
+
+  /**
+   * Appends the cached moves of a position to the given buffer, and records
+   * the request.
+   * 
+   * @param boardHash The {@link Zobrist} hash of the board.
+   * @param rackKey The {@link LeaveTable} key of the rack.
+   * @param buffer The buffer to add the moves to.
+   * @return True if the moves were found, or false if the buffer is unchanged.
+   */
+  public boolean get(long boardHash, long rackKey, MoveBuffer buffer) {
+    long hash = hash(boardHash, rackKey);
+    Segment segment = getSegment(hash);
+    Moves moves;
+    synchronized (segment) {
+      segment.sketch_.increment(hash);
+      moves = segment.entries_.get(new Key(boardHash, rackKey));
+    }
+    if (moves == null) {
+      misses_.increment();
+      return false;
+    }
+    // The moves are never modified once stored, so they can be copied without
+    // the lock.
+    moves.addTo(buffer);
+    hits_.increment();
+    return true;
+  }
+
+  /**
+   * Stores the moves of a position, unless they are too large or were
+   * requested less often than the entries they would replace.
+   * 
+   * @param boardHash The {@link Zobrist} hash of the board.
+   * @param rackKey The {@link LeaveTable} key of the rack.
+   * @param buffer The buffer holding the moves.
+   * @param start The index in the buffer of the position's first move. The
+   *          position's moves run to the end of the buffer.
+   */
+  public void put(long boardHash, long rackKey, MoveBuffer buffer, int start) {
+    long hash = hash(boardHash, rackKey);
+    Segment segment = getSegment(hash);
+    Moves moves = new Moves(buffer, start);
+    long bytes = moves.getBytes();
+    Key key = new Key(boardHash, rackKey);
+    synchronized (segment) {
+      if (segment.entries_.containsKey(key))
+        return;
+      if (bytes > segment.maxBytes_ || !makeRoom(segment, hash, bytes)) {
+        rejections_.increment();
+        return;
+      }
+      segment.entries_.put(key, moves);
+      segment.bytes_ += bytes;
+    }
+  }
+
+  /**
+   * Removes every entry from this cache. The statistics are kept.
+   */
+  public void clear() {
+    for (Segment segment : segments_) {
+      synchronized (segment) {
+        segment.entries_.clear();
+        segment.bytes_ = 0;
+      }
+    }
+  }
+
+  @Override
+  public long getHitCount() {
+    return hits_.sum();
+  }
+
+  @Override
+  public long getMissCount() {
+    return misses_.sum();
+  }
+
+  @Override
+  public double getHitRate() {
+    long hits = hits_.sum();
+    long total = hits + misses_.sum();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictions_.sum();
+  }
+
+  @Override
+  public long getRejectionCount() {
+    return rejections_.sum();
+  }
+
+  @Override
+  public int getSize() {
+    int size = 0;
+    for (Segment segment : segments_) {
+      synchronized (segment) {
+        size += segment.entries_.size();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public long getBytes() {
+    long bytes = 0;
+    for (Segment segment : segments_) {
+      synchronized (segment) {
+        bytes += segment.bytes_;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getMaxBytes() {
+    return maxBytes_;
+  }
+
+  @Override
+  public void resetStats() {
+    hits_.reset();
+    misses_.reset();
+    evictions_.reset();
+    rejections_.reset();
+  }
+
+  /**
+   * Evicts the least recently used entries of the given segment until there
+   * is room for a new entry, provided that every entry to be evicted was
+   * requested less often than the new one. The caller must hold the segment's
+   * lock.
+   * 
+   * @param segment The segment.
+   * @param hash The hash of the new entry's key.
+   * @param bytes The size of the new entry.
+   * @return True if there is now room for the new entry, or false if nothing
+   *         was evicted.
+   */
+  private boolean makeRoom(Segment segment, long hash, long bytes) {
+    long excess = segment.bytes_ + bytes - segment.maxBytes_;
+    if (excess <= 0)
+      return true;
+
+    // Find the victims first, so that none are evicted unless all of them can
+    // be.
+    int frequency = segment.sketch_.frequency(hash);
+    int numVictims = 0;
+    long freed = 0;
+    for (Map.Entry<Key, Moves> entry : segment.entries_.entrySet()) {
+      if (freed >= excess)
+        break;
+      Key key = entry.getKey();
+      long victimHash = hash(key.boardHash_, key.rackKey_);
+      if (segment.sketch_.frequency(victimHash) >= frequency)
+        return false;
+      freed += entry.getValue().getBytes();
+      numVictims++;
+    }
+
+    Iterator<Moves> victims = segment.entries_.values().iterator();
+    for (int i = 0; i < numVictims; i++) {
+      segment.bytes_ -= victims.next().getBytes();
+      victims.remove();
+    }
+    evictions_.add(numVictims);
+    return true;
+  }
+
+  /**
+   * Returns the segment that holds the key with the given hash.
+   */
+  private Segment getSegment(long hash) {
+    return segments_[(int) (hash >>> 48) & (segments_.length - 1)];
+  }
+
+  /**
+   * Returns a well-mixed hash of a key, for choosing segments and sketch
+   * counters.
+   */
+  private static long hash(long boardHash, long rackKey) {
+    long h = (boardHash ^ rackKey * 0xBF58476D1CE4E5B9L) * 0x94D049BB133111EBL;
+    return h ^ (h >>> 31);
+  }
+}
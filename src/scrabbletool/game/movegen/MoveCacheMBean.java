@@ -0,0 +1,56 @@
+package scrabbletool.game.movegen;
+
+/**
+ * The management interface of {@link MoveCache}, through which a cache's
+ * occupancy and hit rate are published over JMX. All counts are totals since
+ * the cache was created or its statistics were last reset.
+ */
+public interface MoveCacheMBean {
+  /**
+   * Returns the number of lookups that found the position's moves.
+   */
+  public long getHitCount();
+
+  /**
+   * Returns the number of lookups that didn't find the position's moves.
+   */
+  public long getMissCount();
+
+  /**
+   * Returns the fraction of lookups that found the position's moves, or 0 if
+   * there have been none.
+   */
+  public double getHitRate();
+
+  /**
+   * Returns the number of entries removed to make room for new ones.
+   */
+  public long getEvictionCount();
+
+  /**
+   * Returns the number of entries that were not stored, either because they
+   * were requested less often than the entries they would have replaced or
+   * because they are too large for the cache.
+   */
+  public long getRejectionCount();
+
+  /**
+   * Returns the number of positions in the cache.
+   */
+  public int getSize();
+
+  /**
+   * Returns the estimated memory used by the cache's entries, in bytes.
+   */
+  public long getBytes();
+
+  /**
+   * Returns the largest number of bytes that the cache's entries may use.
+   */
+  public long getMaxBytes();
+
+  /**
+   * Sets every counter back to zero. The entries are kept.
+   */
+  public void resetStats();
+}
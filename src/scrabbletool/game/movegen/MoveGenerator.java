@@ -1,17 +1,25 @@
 package scrabbletool.game.movegen;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
-import scrabbletool.gaddag.Arc;
-import scrabbletool.gaddag.GADDAG;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import scrabbletool.gaddag.PackedGADDAG;
+import scrabbletool.game.Alphabet;
 import scrabbletool.game.Game;
-import scrabbletool.game.Letter;
+import scrabbletool.game.LeaveTable;
 import scrabbletool.game.Move;
+import scrabbletool.game.MoveBuffer;
+import scrabbletool.game.PackedMove;
+import scrabbletool.game.ScoreCalculator;
 import scrabbletool.game.board.Blank;
 import scrabbletool.game.board.Board;
+import scrabbletool.game.board.BoardUtilities;
 import scrabbletool.game.board.Tile;
 
 /**
@@ -22,26 +30,469 @@ import scrabbletool.game.board.Tile;
  * @see #generate(List)
  */
 public class MoveGenerator {
+  /**
+   * Receives the moves found by a {@link MoveGenerator} as they are generated.
+   */
+  public interface MoveHandler {
+    /**
+     * Handles a single move. Each move is passed to the handler exactly once.
+     * 
+     * @param move The move that was found.
+     * @param score The score of the move.
+     */
+    public void handleMove(Move move, int score);
+  }
+
+  /**
+   * Receives the moves found by a {@link MoveGenerator} along with their
+   * equity.
+   */
+  public interface EquityHandler {
+    /**
+     * Handles a single move. Each move is passed to the handler exactly once.
+     * 
+     * @param move The move that was found.
+     * @param score The score of the move.
+     * @param equity The score of the move plus the value of the tiles it leaves
+     *          on the rack, in units of {@code 1/}{@value LeaveTable#SCALE}
+     *          points.
+     */
+    public void handleMove(Move move, int score, int equity);
+  }
+
+  /**
+   * The state of a single generation pass over one orientation of the board.
+   * Each pass has its own rack and word, so separate passes may run
+   * concurrently as long as their handlers are independent.
+   */
+  private class Traversal {
+    private Board board_;
+    private SquareData squareData_;
+    private boolean transposed_;
+    private Rack rack_;
+    private LinkedList<Tile> word_;
+    private MoveHandler handler_;
+    private MoveBuffer buffer_;
+    private LeaveTable leaves_;
+    private EquityHandler equityHandler_;
+    private int anchorRow_;
+    private int anchorCol_;
+
+    // Counts for this pass, which are added to the shared statistics by
+    // |flushStats|. The move count is always kept, since it is cheap and is
+    // also reported to the flight recorder. The others are only kept if
+    // |GenerationStats.ENABLED| is true.
+    private long arcsFollowed_;
+    private long nodesVisited_;
+    private long movesRecorded_;
+    private long duplicatesRejected_;
+    private long anchorsProcessed_;
+
+    /**
+     * Creates a new pass.
+     * 
+     * @param transposed True to generate down moves, false to generate across
+     *          moves.
+     * @param rack The player's tile rack.
+     * @param handler The handler to pass generated moves to, or {@code null}
+     *          to add them to {@code buffer} instead.
+     * @param buffer The buffer to add generated moves to, if {@code handler}
+     *          is {@code null}.
+     */
+    public Traversal(boolean transposed,
+                     List<Tile> rack,
+                     MoveHandler handler,
+                     MoveBuffer buffer) {
+      this(transposed, rack, handler, buffer, null, null);
+    }
+
+    /**
+     * Creates a new pass that passes generated moves to the given handler
+     * along with their equity.
+     * 
+     * @param transposed True to generate down moves, false to generate across
+     *          moves.
+     * @param rack The player's tile rack.
+     * @param leaves The values of the leaves.
+     * @param equityHandler The handler to pass generated moves to.
+     */
+    public Traversal(boolean transposed,
+                     List<Tile> rack,
+                     LeaveTable leaves,
+                     EquityHandler equityHandler) {
+      this(transposed, rack, null, null, leaves, equityHandler);
+    }
+
+    private Traversal(boolean transposed,
+                      List<Tile> rack,
+                      MoveHandler handler,
+                      MoveBuffer buffer,
+                      LeaveTable leaves,
+                      EquityHandler equityHandler) {
+      // Down moves are generated as across moves on the transposed board.
+      Board board = MoveGenerator.this.board_;
+      board_ = transposed ? board.transpose() : board;
+      squareData_ = dataManager_.getSquareData();
+      if (transposed)
+        squareData_ = squareData_.transpose();
+      transposed_ = transposed;
+      rack_ = new Rack(rack, game_.getAlphabet().size());
+      // For performance reasons, the |word| structure must be a linked list.
+      word_ = new LinkedList<Tile>();
+      handler_ = handler;
+      buffer_ = buffer;
+      leaves_ = leaves;
+      equityHandler_ = equityHandler;
+    }
+
+    /**
+     * Generates all across moves anchored on the given row.
+     * 
+     * @param row The row to search for anchors.
+     */
+    public void generateRow(int row) {
+      anchorRow_ = row;
+      long anchors = squareData_.getAcrossAnchors(row);
+      if (GenerationStats.ENABLED)
+        anchorsProcessed_ += Long.bitCount(anchors);
+      for (; anchors != 0; anchors &= anchors - 1) {
+        anchorCol_ = Long.numberOfTrailingZeros(anchors);
+        generateOn(anchorCol_, gaddag_.getRootArc(), 0, 1, 0);
+      }
+    }
+
+    /**
+     * This method is one of a pair of recursive coroutines (the other being
+     * {@link #evaluateOn}) that perform move generation. For details of their
+     * operation, see the 1994 paper by Gordon. (Note: In the Gordon paper,
+     * this method is referred to as {@code Gen}).
+     * 
+     * @param currentCol The generation algorithm's current column.
+     * @param arc The algorithm's current position in the GADDAG.
+     * @param mainScore The score of the main word so far, before its word
+     *          multiplier is applied.
+     * @param wordMultiplier The product of the word multipliers covered by the
+     *          tiles placed so far.
+     * @param crossScore The total score of the cross-words formed so far.
+     */
+    private void generateOn(int currentCol,
+                            int arc,
+                            int mainScore,
+                            int wordMultiplier,
+                            int crossScore) {
+      if (GenerationStats.ENABLED)
+        nodesVisited_++;
+      int ordinalOnCurrentSquare = board_.getOrdinal(anchorRow_, currentCol);
+      if (ordinalOnCurrentSquare != Board.NO_TILE) {
+        // If there is a tile on the current square, then recurse using the
+        // letter on that tile. Modifiers under existing tiles don't count.
+        Tile tileOnCurrentSquare = board_.isBlank(anchorRow_, currentCol)
+                                   ? blanks_[ordinalOnCurrentSquare]
+                                   : tiles_[ordinalOnCurrentSquare];
+        int newArc = gaddag_.getArc(arc, ordinalOnCurrentSquare);
+        if (GenerationStats.ENABLED)
+          arcsFollowed_++;
+        evaluateOn(currentCol, tileOnCurrentSquare, newArc, arc, mainScore
+                   + board_.getTileValue(anchorRow_, currentCol),
+                   wordMultiplier, crossScore);
+      } else if (!rack_.isEmpty()) {
+        // Otherwise, if we still have tiles in the rack, recurse using each of
+        // the rack tiles.
+
+        // A letter is only worth trying if it is allowed by the cross-set on
+        // the current square, and if it either continues a path in the GADDAG
+        // or completes a word.
+        long crossSet = squareData_.getAcrossSet(anchorRow_, currentCol);
+        long pathLetters = gaddag_.getOutgoingLetters(arc)
+                           | gaddag_.getLetterSet(arc);
+        long playable = crossSet & pathLetters;
+
+        // Placing a tile here applies this square's multipliers, and forms a
+        // cross-word if there are tiles above or below.
+        int letterMultiplier = board_.getLetterMultiplier(anchorRow_,
+                                                          currentCol);
+        int squareWordMultiplier = board_.getWordMultiplier(anchorRow_,
+                                                            currentCol);
+        int newWordMultiplier = wordMultiplier * squareWordMultiplier;
+        int crossSum = squareData_.getAcrossSum(anchorRow_, currentCol);
+
+        // Recurse once for each unique rack letter that is playable here.
+        long rackPlayable = playable & rack_.getMask();
+        if (GenerationStats.ENABLED)
+          arcsFollowed_ += Long.bitCount(rackPlayable);
+        for (long mask = rackPlayable; mask != 0; mask &= mask - 1) {
+          int ordinal = Long.numberOfTrailingZeros(mask);
+          int newArc = gaddag_.getArc(arc, ordinal);
+          int letterScore = tileValues_[ordinal] * letterMultiplier;
+          int newCrossScore = crossScore;
+          if (crossSum != SquareData.NO_CROSS_SUM)
+            newCrossScore += (crossSum + letterScore) * squareWordMultiplier;
+          rack_.take(ordinal);
+          evaluateOn(currentCol, tiles_[ordinal], newArc, arc, mainScore
+                     + letterScore, newWordMultiplier, newCrossScore);
+          rack_.putBack(ordinal);
+        }
+
+        // If there is a blank, then we need to try every playable letter.
+        // Blanks are worth nothing, but still complete cross-words.
+        if (rack_.getNumBlanks() > 0) {
+          int newCrossScore = crossScore;
+          if (crossSum != SquareData.NO_CROSS_SUM)
+            newCrossScore += crossSum * squareWordMultiplier;
+          rack_.takeBlank();
+          if (GenerationStats.ENABLED)
+            arcsFollowed_ += Long.bitCount(playable);
+          for (long mask = playable; mask != 0; mask &= mask - 1) {
+            int ordinal = Long.numberOfTrailingZeros(mask);
+            int newArc = gaddag_.getArc(arc, ordinal);
+            evaluateOn(currentCol, blanks_[ordinal], newArc, arc, mainScore,
+                       newWordMultiplier, newCrossScore);
+          }
+          rack_.putBackBlank();
+        }
+      }
+    }
+
+    /**
+     * This method is one of a pair of recursive coroutines (the other being
+     * {@link #generateOn}) that perform move generation. For details of their
+     * operation, see the 1994 paper by Gordon. (Note: In the Gordon paper,
+     * this method is referred to as {@code GoOn}).
+     * 
+     * @param currentCol The generation algorithm's current column.
+     * @param letter The letter to evaluate.
+     * @param newArc The algorithm's current position in the GADDAG.
+     * @param oldArc The algorithm's previous position in the GADDAG.
+     * @param mainScore The score of the main word so far, including
+     *          {@code letter}, before its word multiplier is applied.
+     * @param wordMultiplier The product of the word multipliers covered by the
+     *          tiles placed so far, including {@code letter}.
+     * @param crossScore The total score of the cross-words formed so far,
+     *          including any formed by {@code letter}.
+     */
+    private void evaluateOn(int currentCol,
+                            Tile letter,
+                            int newArc,
+                            int oldArc,
+                            int mainScore,
+                            int wordMultiplier,
+                            int crossScore) {
+      if (currentCol <= anchorCol_) {
+        // If we're left of the anchor square, we are generating a prefix.
+        word_.addFirst(letter);
+
+        // Determine whether there is no tile immediately left of the current
+        // position. (The square left of the board is always empty.)
+        boolean noTileToTheLeft = !board_.hasTile(anchorRow_, currentCol - 1);
+
+        // If we have formed a valid word, record it. The word ends at the
+        // anchor square, so it is only complete if nothing follows the anchor.
+        if (gaddag_.hasLetter(oldArc, letter.getLetter()) && noTileToTheLeft
+            && !board_.hasTile(anchorRow_, anchorCol_ + 1))
+          recordMove(currentCol, mainScore * wordMultiplier + crossScore);
+
+        if (newArc != PackedGADDAG.NO_ARC) {
+          // If there's additional room to the left, keep generating prefixes.
+          if (currentCol > 0)
+            generateOn(currentCol - 1, newArc, mainScore, wordMultiplier,
+                       crossScore);
+
+          // Switch to suffix generation.
+          int delimiterArc = gaddag_.getDelimiterArc(newArc);
+          if (GenerationStats.ENABLED)
+            arcsFollowed_++;
+
+          // Generate to the right of the anchor square if possible.
+          if (delimiterArc != PackedGADDAG.NO_ARC && noTileToTheLeft
+              && anchorCol_ < board_.size() - 1)
+            generateOn(anchorCol_ + 1, delimiterArc, mainScore,
+                       wordMultiplier, crossScore);
+        }
+
+        // Remove our addition to |word_|.
+        word_.removeFirst();
+      } else {
+        // If we're right of the anchor square, we are generating a suffix.
+        word_.addLast(letter);
+
+        // Determine whether there is no tile immediately right of the current
+        // position. (The square right of the board is always empty.)
+        boolean noTileToTheRight = !board_.hasTile(anchorRow_, currentCol + 1);
+        // If we have formed a valid word, record it.
+        if (gaddag_.hasLetter(oldArc, letter.getLetter()) && noTileToTheRight)
+          recordMove(currentCol - word_.size() + 1, mainScore * wordMultiplier
+                                                    + crossScore);
+
+        // If there's additional room to the right, keep generating suffixes.
+        if (newArc != PackedGADDAG.NO_ARC && currentCol < board_.size() - 1)
+          generateOn(currentCol + 1, newArc, mainScore, wordMultiplier,
+                     crossScore);
+
+        // Remove our addition to |word_|.
+        word_.removeLast();
+      }
+    }
+
+    /**
+     * Passes the move formed by the current word to the handler or buffer,
+     * unless the same move is also found elsewhere in the search.
+     * 
+     * @param wordStartCol The starting column of this move
+     * @param score The score of this move.
+     */
+    private void recordMove(int wordStartCol, int score) {
+      // A move is found once from every anchor that it covers, so only report
+      // it from the leftmost one.
+      long coveredLeft = (1L << anchorCol_) - (1L << wordStartCol);
+      if ((squareData_.getAcrossAnchors(anchorRow_) & coveredLeft) != 0) {
+        if (GenerationStats.ENABLED)
+          duplicatesRejected_++;
+        return;
+      }
+
+      // The move places tiles on the squares of the word that are empty.
+      long wordColumns = (-1L >>> (Long.SIZE - word_.size())) << wordStartCol;
+      long positions = wordColumns & ~board_.getOccupancy(anchorRow_);
+
+      // A word made up entirely of tiles already on the board isn't a move.
+      if (positions == 0)
+        return;
+      score += ScoreCalculator.getFullRackBonus(Long.bitCount(positions));
+
+      // A single tile that forms words in both directions is found by both
+      // passes, so only report it from the across pass.
+      boolean singleTile = Long.bitCount(positions) == 1;
+      int placedCol = Long.numberOfTrailingZeros(positions);
+      if (transposed_ && singleTile && formsCrossWord(placedCol)) {
+        if (GenerationStats.ENABLED)
+          duplicatesRejected_++;
+        return;
+      }
+
+      movesRecorded_++;
+
+      if (buffer_ != null) {
+        // Pack the move directly, without creating any objects. A single tile
+        // is always packed as an across move.
+        long letters;
+        if (transposed_ && singleTile) {
+          letters = PackedMove.newLetters(true, placedCol);
+          positions = 1L << anchorRow_;
+        } else {
+          letters = PackedMove.newLetters(!transposed_, anchorRow_);
+        }
+        int letterCol = wordStartCol;
+        int index = 0;
+        for (Tile wordTile : word_) {
+          if (!board_.hasTile(anchorRow_, letterCol++)) {
+            letters = PackedMove.addTile(letters, index++,
+                                         wordTile.getLetter().getOrdinal(),
+                                         wordTile instanceof Blank);
+          }
+        }
+        buffer_.add(positions, letters, score);
+        return;
+      }
+
+      Move newMove = new Move(!transposed_, anchorRow_);
+      int letterCol = wordStartCol;
+      for (Tile wordTile : word_) {
+        // Only add the tile to the move structure if it isn't already on the
+        // board.
+        if (!board_.hasTile(anchorRow_, letterCol))
+          newMove.addTile(wordTile, letterCol);
+        letterCol++;
+      }
+      if (equityHandler_ != null) {
+        // The rack holds exactly the tiles that the move leaves, so the leave
+        // is valued without another pass over the move.
+        int equity = score * LeaveTable.SCALE
+                     + leaves_.getValue(rack_.getLeaveKey());
+        equityHandler_.handleMove(newMove, score, equity);
+        return;
+      }
+      handler_.handleMove(newMove, score);
+    }
+
+    /**
+     * Adds the counts of this pass to the shared statistics, and resets them.
+     * This must only be called if {@link GenerationStats#ENABLED} is true.
+     */
+    public void flushStats() {
+      GenerationStats.get().addSearch(arcsFollowed_, nodesVisited_,
+                                      movesRecorded_, duplicatesRejected_,
+                                      anchorsProcessed_);
+      arcsFollowed_ = 0;
+      nodesVisited_ = 0;
+      movesRecorded_ = 0;
+      duplicatesRejected_ = 0;
+      anchorsProcessed_ = 0;
+    }
+
+    /**
+     * Returns true if and only if a tile placed on the given column of the
+     * anchor row would touch a tile directly above or below it.
+     * 
+     * @param col The column of the tile.
+     */
+    private boolean formsCrossWord(int col) {
+      return board_.hasTile(anchorRow_ - 1, col)
+             || board_.hasTile(anchorRow_ + 1, col);
+    }
+  }
+
   private DataManager dataManager_;
   private Game game_;
   private Board board_;
-  private GADDAG gaddag_;
-  private Set<Move> moves_;
-  private int anchorRow_;
-  private int anchorCol_;
-  private boolean transposed_;
+  private PackedGADDAG gaddag_;
+  private Tile[] tiles_;
+  private Tile[] blanks_;
+  private int[] tileValues_;
+  private MoveCache cache_;
 
   /**
    * Constructs a new move generator.
    * 
    * @param game The game to be played.
    */
-  public MoveGenerator(Game game, GADDAG gaddag) {
+  public MoveGenerator(Game game, PackedGADDAG gaddag) {
     dataManager_ = new DataManager(game.getBoard(), gaddag, game.getAlphabet());
     game_ = game;
     board_ = game.getBoard();
     gaddag_ = gaddag;
-    transposed_ = false;
+
+    // Tiles are shared between all generated moves, so create one tile and one
+    // filled blank for each letter up front.
+    Alphabet alphabet = game.getAlphabet();
+    tiles_ = new Tile[alphabet.size()];
+    blanks_ = new Tile[alphabet.size()];
+    tileValues_ = new int[alphabet.size()];
+    for (int i = 0; i < alphabet.size(); i++) {
+      tiles_[i] = new Tile(alphabet.getLetter(i));
+      blanks_[i] = new Blank(alphabet.getLetter(i));
+      tileValues_[i] = alphabet.getLetter(i).getValue();
+    }
+  }
+
+  /**
+   * Sets the cache in which the moves generated into a {@link MoveBuffer} are
+   * looked up and stored. The cache may be shared with other generators that
+   * use the same GADDAG and board layout, including ones on other threads.
+   * 
+   * @param cache The cache to use, or {@code null} to generate every position
+   *          from scratch.
+   * @see #generate(List, MoveBuffer)
+   */
+  public void setCache(MoveCache cache) {
+    cache_ = cache;
+  }
+
+  /**
+   * Returns the cache used by this generator, or {@code null} if there is
+   * none.
+   */
+  public MoveCache getCache() {
+    return cache_;
   }
 
   /**
@@ -56,214 +507,293 @@ public class MoveGenerator {
   }
 
   /**
-   * Finds all valid scrabble moves that can be played using the tiles in the
-   * specified rack.
+   * Plays the specified move on the board and updates this generator, in a
+   * way that can be reverted by {@link #unmakeMove(Move)}. This lets a search
+   * walk the game tree on a single board, without copying it.
    * 
-   * @param rack A list of {@link Tile}s that comprise the player's rack.
-   * @return A list of all valid moves.
+   * @param move The move to play.
+   */
+  public void makeMove(Move move) {
+    dataManager_.mark();
+    board_.playMove(move);
+    dataManager_.update(move);
+  }
+
+  /**
+   * Removes the specified move from the board and restores this generator to
+   * its state before the move was made.
+   * 
+   * @param move The move to remove, which must be the last move passed to
+   *          {@link #makeMove(Move)} that hasn't yet been unmade.
+   */
+  public void unmakeMove(Move move) {
+    board_.removeMove(move);
+    dataManager_.undo();
+  }
+
+  /**
+   * Returns the score of the given move, which must not yet have been played
+   * on the board, including the bonus for using a full rack. This gives the
+   * same result as {@link ScoreCalculator#calculateScore}, but reads the value
+   * of each cross-word from the generator's cross-sums instead of scanning the
+   * board for it.
+   * 
+   * @param move The move to score.
    */
-  private void generate(List<Tile> rack) {
-    moves_ = new HashSet<Move>();
+  public int calculateScore(Move move) {
+    Map<Integer, Tile> tileMap = move.getTileMap();
+    if (tileMap.isEmpty())
+      return 0;
+
+    // Score the move as an across move, transposing if necessary.
+    Board board = move.isAcross() ? board_ : board_.transpose();
+    SquareData squareData = dataManager_.getSquareData();
+    if (!move.isAcross())
+      squareData = squareData.transpose();
+    int row = move.getRowOrCol();
+
+    // The main word may extend past the move's tiles in both directions.
+    int firstCol = tileMap.keySet().iterator().next();
+    int wordStart = BoardUtilities.findWordBoundary(board, row, firstCol - 1,
+                                                    BoardUtilities.LEFT);
+    int mainScore = 0;
+    int wordMultiplier = 1;
+    int crossScore = 0;
+    int col = wordStart;
+    for (;; col++) {
+      Tile placedTile = tileMap.get(col);
+      if (placedTile == null) {
+        if (!board.hasTile(row, col))
+          break;
+        mainScore += board.getTileValue(row, col);
+        continue;
+      }
 
-    // Generate all across moves.
-    generateAcrossMoves(rack);
+      int squareWordMultiplier = board.getWordMultiplier(row, col);
+      int letterScore = BoardUtilities.getTileValue(placedTile)
+                        * board.getLetterMultiplier(row, col);
+      mainScore += letterScore;
+      wordMultiplier *= squareWordMultiplier;
 
-    // Generate all down moves by transposing the board.
-    transpose();
-    generateAcrossMoves(rack);
+      int crossSum = squareData.getAcrossSum(row, col);
+      if (crossSum != SquareData.NO_CROSS_SUM)
+        crossScore += (crossSum + letterScore) * squareWordMultiplier;
+    }
 
-    // Restore the board's original orientation.
-    transpose();
+    // A main word of one letter isn't a word, so it doesn't score.
+    if (col - wordStart == 1)
+      return crossScore;
+    return mainScore * wordMultiplier + crossScore
+           + ScoreCalculator.getFullRackBonus(tileMap.size());
   }
 
   /**
-   * Transposes the data used by this generator.
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack, passing each one to the given handler as soon as it is
+   * found. No move is passed to the handler more than once, and moves are not
+   * retained by the generator.
+   * 
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @param handler The handler to receive the moves.
    */
-  private void transpose() {
-    dataManager_.transpose();
-    board_ = board_.transpose();
-    transposed_ = !transposed_;
+  public void generate(List<Tile> rack, MoveHandler handler) {
+    generate(rack, new Traversal(false, rack, handler, null),
+             new Traversal(true, rack, handler, null));
   }
 
   /**
-   * Generates all across moves on the board.
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack, passing each one to the given handler along with its
+   * equity as soon as it is found. The value of each move's leave is looked
+   * up as the move is recorded, while the generator's rack holds exactly the
+   * tiles left over.
    * 
-   * @param rack The player's tile rack.
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @param leaves The values of the leaves.
+   * @param handler The handler to receive the moves.
+   * @throws IllegalArgumentException If the rack has more than
+   *           {@link LeaveTable#MAX_LEAVE_SIZE} tiles.
    */
-  private void generateAcrossMoves(List<Tile> rack) {
-    // For performance reasons, both the rack and the |word| structure must be
-    // linked lists.
-    LinkedList<Tile> linkedRack = new LinkedList<Tile>(rack);
-    LinkedList<Tile> word = new LinkedList<Tile>();
-
-    // Iterate over the board, looking for across anchors.
-    for (anchorRow_ = 0; anchorRow_ < board_.size(); anchorRow_++) {
-      for (anchorCol_ = 0; anchorCol_ < board_.size(); anchorCol_++) {
-        if (dataManager_.getSquareData(anchorRow_, anchorCol_).getAnchor()
-                        .isAcrossAnchor())
-          generateOn(anchorCol_, word, linkedRack, gaddag_.getRootArc());
-      }
-    }
+  public void generate(List<Tile> rack,
+                       LeaveTable leaves,
+                       EquityHandler handler) {
+    if (rack.size() > LeaveTable.MAX_LEAVE_SIZE)
+      throw new IllegalArgumentException("Cannot value the leaves of a rack of "
+                                         + rack.size() + " tiles. Racks must "
+                                         + "have at most "
+                                         + LeaveTable.MAX_LEAVE_SIZE
+                                         + " tiles.");
+    generate(rack, new Traversal(false, rack, leaves, handler),
+             new Traversal(true, rack, leaves, handler));
   }
 
   /**
-   * This method is one of a pair of recursive coroutines (the other being
-   * {@link #evaluateOn}) that perform move generation. For details of their
-   * operation, see the 1994 paper by Gordon. (Note: In the Gordon paper, this
-   * method is referred to as {@code Gen}).
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack, adding each one to the given buffer in the
+   * {@link PackedMove} encoding. No {@link Move} objects are created, and no
+   * move is added more than once. If this generator has a cache, the moves are
+   * copied from it when the position has been generated before, in the same
+   * order.
    * 
-   * @param currentCol The generation algorithm's current column.
-   * @param word The word formed by the algorithm, up to this point.
-   * @param rack The rack of remaining tiles.
-   * @param arc The algorithm's current position in the GADDAG.
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @param buffer The buffer to add the moves to.
+   * @throws IllegalArgumentException If the rack has more than
+   *           {@link PackedMove#MAX_TILES} tiles.
    */
-  private void generateOn(int currentCol,
-                          LinkedList<Tile> word,
-                          List<Tile> rack,
-                          Arc arc) {
-    Tile tileOnCurrentSquare = board_.get(anchorRow_, currentCol).getTile();
-    if (tileOnCurrentSquare != null) {
-      // If there is a tile on the current square, then recurse using the letter
-      // on that tile.
-      Arc newArc = gaddag_.getArc(arc.getDestination(),
-                                  tileOnCurrentSquare.getLetter());
-      evaluateOn(currentCol, tileOnCurrentSquare, word, rack, newArc, arc);
-    } else if (!rack.isEmpty()) {
-      // Otherwise, if we still have tiles in the rack, recurse using each of
-      // the rack tiles.
-
-      // Find the cross-set on the current square.
-      Set<Letter> crossSet = dataManager_.getSquareData(anchorRow_, currentCol)
-                                         .getCrossSet().getAcrossSet();
-
-      // We only need to recurse once for each unique rack tile, so dump the
-      // rack into a |Set|.
-      Set<Tile> uniqueRackTiles = new TreeSet<Tile>(rack);
-      for (Tile rackTile : uniqueRackTiles) {
-        // Remove the current tile from the rack in preparation to recurse.
-        List<Tile> newRack = removeTileFromRack(rack, rackTile);
-
-        if (!(rackTile instanceof Blank)) {
-          // Recurse using this rack tile.
-          Arc newArc = gaddag_.getArc(arc.getDestination(),
-                                      rackTile.getLetter());
-          evaluateOn(currentCol, rackTile, word, newRack, newArc, arc);
-        } else if (crossSet.contains(rackTile.getLetter())) {
-          // If the tile is blank, then we need to try every possible letter.
-          // Luckily, the set of possible letters is simply the cross-set of the
-          // current square.
-          for (Letter allowedBlankLetter : crossSet) {
-            Tile filledBlank = new Blank(allowedBlankLetter);
-            Arc newArc = gaddag_.getArc(arc.getDestination(),
-                                        allowedBlankLetter);
-            evaluateOn(currentCol, filledBlank, word, newRack, newArc, arc);
-          }
-        }
-      }
+  public void generate(List<Tile> rack, MoveBuffer buffer) {
+    if (rack.size() > PackedMove.MAX_TILES)
+      throw new IllegalArgumentException("Cannot pack moves from a rack of "
+                                         + rack.size() + " tiles. Racks must "
+                                         + "have at most "
+                                         + PackedMove.MAX_TILES + " tiles.");
+    if (cache_ == null) {
+      generate(rack, new Traversal(false, rack, null, buffer),
+               new Traversal(true, rack, null, buffer));
+      return;
     }
+
+    long boardHash = board_.getHash();
+    long rackKey = new Rack(rack, tiles_.length).getLeaveKey();
+    if (cache_.get(boardHash, rackKey, buffer))
+      return;
+    int start = buffer.size();
+    generate(rack, new Traversal(false, rack, null, buffer),
+             new Traversal(true, rack, null, buffer));
+    cache_.put(boardHash, rackKey, buffer, start);
   }
 
   /**
-   * Returns a rack that contains every tile in the specified rack
-   * <em>minus</em> the specified tile.
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack, by running the given passes over each orientation of the
+   * board.
    * 
-   * @param rack The rack from which to subtract the tile.
-   * @param tileToBeRemoved The tile to be subtracted.
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @param across The pass that generates across moves.
+   * @param down The pass that generates down moves.
    */
-  private List<Tile> removeTileFromRack(List<Tile> rack, Tile tileToBeRemoved) {
-    // Simply move the specified element to the end of the list and return a
-    // sub-list.
-    rack.remove(tileToBeRemoved);
-    rack.add(tileToBeRemoved);
-    return rack.subList(0, rack.size() - 1);
+  private void generate(List<Tile> rack, Traversal across, Traversal down) {
+    long startTime = GenerationStats.ENABLED ? System.nanoTime() : 0;
+    GenerationEvent event = new GenerationEvent();
+    event.begin();
+    int size = board_.size();
+
+    // Generate all across moves, then generate all down moves on the
+    // transposed board.
+    for (int row = 0; row < size; row++)
+      across.generateRow(row);
+    for (int row = 0; row < size; row++)
+      down.generateRow(row);
+
+    if (event.shouldCommit()) {
+      event.moves = (int) (across.movesRecorded_ + down.movesRecorded_);
+      event.packed = across.buffer_ != null;
+      event.parallel = false;
+      commitEvent(event, rack);
+    }
+    if (GenerationStats.ENABLED) {
+      across.flushStats();
+      down.flushStats();
+      GenerationStats.get().getGenerateLatency()
+                     .record(System.nanoTime() - startTime);
+    }
   }
 
   /**
-   * This method is one of a pair of recursive coroutines (the other being
-   * {@link #generateOn}) that perform move generation. For details of their
-   * operation, see the 1994 paper by Gordon. (Note: In the Gordon paper, this
-   * method is referred to as {@code GoOn}).
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack.
    * 
-   * @param currentCol The generation algorithm's current column.
-   * @param letter The letter to evaluate.
-   * @param word The word formed by the algorithm, up to this point.
-   * @param rack The rack of remaining tiles.
-   * @param newArc The algorithm's current position in the GADDAG.
-   * @param oldArc The algorithm's previous position in the GADDAG.
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @return A set of all valid moves.
    */
-  private void evaluateOn(int currentCol,
-                          Tile letter,
-                          LinkedList<Tile> word,
-                          List<Tile> rack,
-                          Arc newArc,
-                          Arc oldArc) {
-    if (currentCol <= anchorCol_) {
-      // If we're left of the anchor square, we are generating a prefix.
-      word.addFirst(letter);
-
-      // Determine whether there is no tile immediately left of the current
-      // position.
-      boolean noTileToTheLeft = (currentCol == 0 || board_.get(anchorRow_,
-                                                               currentCol - 1)
-                                                          .getTile() == null);
-
-      // If we have formed a valid word, record it.
-      if (oldArc.hasLetter(letter.getLetter()) && noTileToTheLeft)
-        recordMove(currentCol, word);
-
-      if (newArc != null) {
-        // If there's additional room to the left, keep generating prefixes.
-        if (currentCol > 0)
-          generateOn(currentCol - 1, word, rack, newArc);
-
-        // Switch to suffix generation.
-        Arc delimiterArc = newArc.getDestination().getArc(GADDAG.DELIMITER);
-
-        // Generate to the right of the anchor square if possible.
-        if (delimiterArc != null && noTileToTheLeft
-            && anchorCol_ < board_.size() - 1)
-          generateOn(anchorCol_ + 1, word, rack, delimiterArc);
+  public Set<Move> generate(List<Tile> rack) {
+    final Set<Move> moves = new HashSet<Move>();
+    generate(rack, new MoveHandler() {
+      @Override
+      public void handleMove(Move move, int score) {
+        moves.add(move);
       }
+    });
+    return moves;
+  }
 
-      // Remove our addition to |word|.
-      word.removeFirst();
-    } else {
-      // If we're right of the anchor square, we are generating a suffix.
-      word.addLast(letter);
-
-      // Determine whether there is no tile immediately right of the current
-      // position.
-      boolean noTileToTheRight = (currentCol == board_.size() - 1 || board_.get(anchorRow_,
-                                                                                currentCol + 1)
-                                                                           .getTile() == null);
-      // If we have formed a valid word, record it.
-      if (oldArc.hasLetter(letter.getLetter()) && noTileToTheRight)
-        recordMove(currentCol - word.size() + 1, word);
-
-      // If there's additional room to the right, keep generating suffixes.
-      if (newArc != null && currentCol < board_.size() - 1)
-        generateOn(currentCol + 1, word, rack, newArc);
-
-      // Remove our addition to |word|.
-      word.removeLast();
+  /**
+   * Finds all valid scrabble moves that can be played using the tiles in the
+   * specified rack, searching each row of each orientation of the board as a
+   * separate task in the given pool. The result is identical to that of
+   * {@link #generate(List)}. The board must not be modified until this method
+   * returns.
+   * 
+   * @param rack A list of {@link Tile}s that comprise the player's rack.
+   * @param pool The pool to search the rows in.
+   * @return A set of all valid moves.
+   */
+  public Set<Move> generate(final List<Tile> rack, ForkJoinPool pool) {
+    long startTime = GenerationStats.ENABLED ? System.nanoTime() : 0;
+    GenerationEvent event = new GenerationEvent();
+    event.begin();
+    List<ForkJoinTask<List<Move>>> tasks = new ArrayList<ForkJoinTask<List<Move>>>();
+    int size = board_.size();
+    for (int i = 0; i < 2 * size; i++) {
+      final boolean transposed = i >= size;
+      final int row = i % size;
+      tasks.add(pool.submit(new Callable<List<Move>>() {
+        @Override
+        public List<Move> call() {
+          final List<Move> moves = new ArrayList<Move>();
+          MoveHandler handler = new MoveHandler() {
+            @Override
+            public void handleMove(Move move, int score) {
+              moves.add(move);
+            }
+          };
+          Traversal traversal = new Traversal(transposed, rack, handler, null);
+          traversal.generateRow(row);
+          if (GenerationStats.ENABLED)
+            traversal.flushStats();
+          return moves;
+        }
+      }));
     }
+
+    Set<Move> moves = new HashSet<Move>();
+    for (ForkJoinTask<List<Move>> task : tasks)
+      moves.addAll(task.join());
+    if (event.shouldCommit()) {
+      event.moves = moves.size();
+      event.packed = false;
+      event.parallel = true;
+      commitEvent(event, rack);
+    }
+    if (GenerationStats.ENABLED) {
+      GenerationStats.get().getGenerateLatency()
+                     .record(System.nanoTime() - startTime);
+    }
+    return moves;
   }
 
   /**
-   * Adds a new move to the list of moves.
+   * Fills in the fields of a generation event that describe the position, and
+   * commits it.
    * 
-   * @param wordStartCol The starting column of this move
-   * @param word The word formed by this move.
+   * @param event The event, whose other fields have been filled in.
+   * @param rack The rack that moves were generated for.
    */
-  private void recordMove(int wordStartCol, List<Tile> word) {
-    Move newMove = new Move(transposed_, anchorRow_);
-    int letterCol = wordStartCol;
-    for (Tile wordTile : word) {
-      // Only add the tile to the move structure if it isn't already on the
-      // board.
-      if (board_.get(anchorRow_, letterCol).getTile() == null)
-        newMove.addTile(wordTile, letterCol);
+  private void commitEvent(GenerationEvent event, List<Tile> rack) {
+    StringBuilder rackText = new StringBuilder(rack.size());
+    for (Tile tile : rack)
+      rackText.append(tile instanceof Blank ? "?" : tile.getLetter().getText());
+    event.rack = rackText.toString();
+
+    SquareData squareData = dataManager_.getSquareData();
+    int tilesOnBoard = 0;
+    int anchors = 0;
+    for (int i = 0; i < board_.size(); i++) {
+      tilesOnBoard += Long.bitCount(board_.getOccupancy(i));
+      anchors += Long.bitCount(squareData.getAcrossAnchors(i))
+                 + Long.bitCount(squareData.getDownAnchors(i));
     }
-    moves_.add(newMove);
+    event.tilesOnBoard = tilesOnBoard;
+    event.anchors = anchors;
+    event.commit();
   }
 }
@@ -0,0 +1,143 @@
+package scrabbletool.game.movegen;
+
+import java.util.List;
+import scrabbletool.game.LeaveTable;
+import scrabbletool.game.Letter;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.Tile;
+
+/**
+ * <p>
+ * A player's rack of tiles as used by the move generator: a multiset of tiles
+ * stored as a count per letter ordinal, plus a count of blanks.
+ * </p>
+ * <p>
+ * Tiles are taken from and put back into the rack in place as the generator
+ * recurses, so no per-step copies of the rack are made. The rack also
+ * maintains the bitmask of letters with a non-zero count, which the generator
+ * intersects with the GADDAG's letter masks to decide which tiles to try.
+ * </p>
+ */
+class Rack {
+  private int[] counts_;
+  private int numBlanks_;
+  private int size_;
+  private long mask_;
+
+  /**
+   * Creates a rack containing the given tiles.
+   * 
+   * @param tiles The tiles to place in the rack.
+   * @param alphabetSize The number of letters in the alphabet.
+   */
+  public Rack(List<Tile> tiles, int alphabetSize) {
+    counts_ = new int[alphabetSize];
+    numBlanks_ = 0;
+    size_ = 0;
+    mask_ = 0;
+    for (Tile tile : tiles) {
+      if (tile instanceof Blank)
+        putBackBlank();
+      else
+        putBack(tile.getLetter().getOrdinal());
+    }
+  }
+
+  /**
+   * Returns true if and only if this rack has no tiles.
+   */
+  public boolean isEmpty() {
+    return size_ == 0;
+  }
+
+  /**
+   * Returns the number of tiles in this rack, including blanks.
+   */
+  public int size() {
+    return size_;
+  }
+
+  /**
+   * Returns the bitmask of the letters that have at least one (non-blank) tile
+   * in this rack.
+   * 
+   * @see Letter#getMask()
+   */
+  public long getMask() {
+    return mask_;
+  }
+
+  /**
+   * Returns the number of tiles in this rack with the letter of the given
+   * ordinal.
+   * 
+   * @param ordinal The ordinal of the letter.
+   */
+  public int getCount(int ordinal) {
+    return counts_[ordinal];
+  }
+
+  /**
+   * Returns the number of blanks in this rack.
+   */
+  public int getNumBlanks() {
+    return numBlanks_;
+  }
+
+  /**
+   * Returns the {@link LeaveTable} key of the tiles in this rack. The rack
+   * must have at most {@link LeaveTable#MAX_LEAVE_SIZE} tiles.
+   */
+  public long getLeaveKey() {
+    // Visiting the letters through the mask puts them in ordinal order, so the
+    // key is canonical.
+    long key = LeaveTable.EMPTY;
+    for (long mask = mask_; mask != 0; mask &= mask - 1) {
+      int ordinal = Long.numberOfTrailingZeros(mask);
+      for (int i = counts_[ordinal]; i > 0; i--)
+        key = LeaveTable.addTile(key, ordinal);
+    }
+    for (int i = numBlanks_; i > 0; i--)
+      key = LeaveTable.addBlank(key);
+    return key;
+  }
+
+  /**
+   * Removes one tile with the letter of the given ordinal from this rack. The
+   * rack must contain such a tile.
+   * 
+   * @param ordinal The ordinal of the letter.
+   */
+  public void take(int ordinal) {
+    if (--counts_[ordinal] == 0)
+      mask_ &= ~(1L << ordinal);
+    size_--;
+  }
+
+  /**
+   * Adds one tile with the letter of the given ordinal to this rack.
+   * 
+   * @param ordinal The ordinal of the letter.
+   */
+  public void putBack(int ordinal) {
+    counts_[ordinal]++;
+    mask_ |= 1L << ordinal;
+    size_++;
+  }
+
+  /**
+   * Removes one blank from this rack. The rack must contain a blank.
+   */
+  public void takeBlank() {
+    numBlanks_--;
+    size_--;
+  }
+
+  /**
+   * Adds one blank to this rack.
+   */
+  public void putBackBlank() {
+    numBlanks_++;
+    size_++;
+  }
+}
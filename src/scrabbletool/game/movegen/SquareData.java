@@ -1,206 +1,272 @@
 package scrabbletool.game.movegen;
 
-import java.util.Set;
-import java.util.TreeSet;
 import scrabbletool.Transposable;
-import scrabbletool.game.Letter;
 
 /**
+ * <p>
  * This class contains the per-square book-keeping data used by the move
- * generator, namely the {@link Anchor} and {@link CrossSet}.
+ * generator, namely the anchor bits, cross-sets and cross-sums of every square
+ * on the board.
+ * </p>
+ * <p>
+ * The data is stored in flat primitive arrays indexed by square, with one
+ * cross-set mask array per orientation. Cross-sets are bitmasks of letter
+ * ordinals. Anchors are stored as one bitmask per line, like the board's
+ * occupancy bitboards: the across anchors of each row, and the down anchors of
+ * each column. A transposed view shares the same arrays and simply swaps the
+ * row and column indices and the across and down arrays, so transposing never
+ * allocates: each store is created together with its transposed view, and
+ * {@link #transpose()} returns that view.
+ * </p>
+ * <p>
+ * A square's cross-sum is the total value of the tiles in the perpendicular
+ * word that a tile placed on it would join, so that the cross-word can be
+ * scored without looking at the board.
+ * </p>
  * 
  * @author Philip Puryear
+ * @see scrabbletool.game.Alphabet#getLetters(long)
  */
 public class SquareData implements Transposable<SquareData> {
   /**
-   * This class encapsulates the vertical and horizontal anchor bits for a given
-   * square.
-   */
-  public static class Anchor implements Transposable<Anchor> {
-    /**
-     * A boolean wrapper whose value is mutable.
-     */
-    private static class MutableBoolean {
-      private boolean value_;
-
-      /**
-       * Creates a new boolean with the given value.
-       * 
-       * @param value The value to use.
-       */
-      public MutableBoolean(boolean value) {
-        value_ = value;
-      }
-
-      /**
-       * Returns the underlying boolean value of this object.
-       */
-      public boolean getValue() {
-        return value_;
-      }
-
-      /**
-       * Sets the underlying boolean value of this object.
-       * 
-       * @param value The value to use.
-       */
-      public void setValue(boolean value) {
-        value_ = value;
-      }
-    }
+   * The cross-sum of a square that has no tiles directly on either side of it
+   * in the perpendicular direction.
+   */
+  public static final int NO_CROSS_SUM = -1;
 
-    private MutableBoolean across_;
-    private MutableBoolean down_;
+  private int size_;
+  private long[] acrossSets_;
+  private long[] downSets_;
+  private int[] acrossSums_;
+  private int[] downSums_;
+  private long[] acrossAnchors_;
+  private long[] downAnchors_;
+  private boolean transposed_;
+  private SquareData transpose_;
 
-    /**
-     * Creates a new anchor object with both across and down bits set to
-     * {@code false}.
-     */
-    public Anchor() {
-      this(new MutableBoolean(false), new MutableBoolean(false));
-    }
-
-    /**
-     * Creates a new anchor object with the given across and down bits.
-     * 
-     * @param across The across bit to use.
-     * @param down The down bit to use.
-     */
-    private Anchor(MutableBoolean across, MutableBoolean down) {
-      across_ = across;
-      down_ = down;
+  /**
+   * Creates a new store for a square board. No square is initially an anchor,
+   * and no square initially has a cross-sum.
+   * 
+   * @param size The number of rows and columns on the board.
+   * @param initialCrossSet The bitmask of the initial contents of both the
+   *          across and down cross-sets of every square.
+   */
+  public SquareData(int size, long initialCrossSet) {
+    int numSquares = size * size;
+    size_ = size;
+    acrossSets_ = new long[numSquares];
+    downSets_ = new long[numSquares];
+    acrossSums_ = new int[numSquares];
+    downSums_ = new int[numSquares];
+    for (int i = 0; i < numSquares; i++) {
+      acrossSets_[i] = initialCrossSet;
+      downSets_[i] = initialCrossSet;
+      acrossSums_[i] = NO_CROSS_SUM;
+      downSums_[i] = NO_CROSS_SUM;
     }
+    acrossAnchors_ = new long[size];
+    downAnchors_ = new long[size];
+    transposed_ = false;
+    transpose_ = new SquareData(this);
+  }
 
-    /**
-     * Returns true if and only if this square is an across anchor.
-     */
-    public boolean isAcrossAnchor() {
-      return across_.getValue();
-    }
+  /**
+   * Creates the transposed view of the given store.
+   * 
+   * @param other The store to transpose.
+   */
+  private SquareData(SquareData other) {
+    size_ = other.size_;
+    acrossSets_ = other.downSets_;
+    downSets_ = other.acrossSets_;
+    acrossSums_ = other.downSums_;
+    downSums_ = other.acrossSums_;
+    acrossAnchors_ = other.downAnchors_;
+    downAnchors_ = other.acrossAnchors_;
+    transposed_ = !other.transposed_;
+    transpose_ = other;
+  }
 
-    /**
-     * Returns true if and only if this square is a down anchor.
-     */
-    public boolean isDownAnchor() {
-      return down_.getValue();
-    }
+  /**
+   * Returns the number of rows and columns covered by this store.
+   */
+  public int size() {
+    return size_;
+  }
 
-    /**
-     * Changes the across-anchor bit on this square according to {@code value}.
-     * 
-     * @param value True to make this square an across anchor, false otherwise.
-     */
-    public void setAcrossAnchor(boolean value) {
-      across_.setValue(value);
-    }
+  /**
+   * Returns true if and only if the specified square is an across anchor.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   */
+  public boolean isAcrossAnchor(int row, int col) {
+    return (acrossAnchors_[row] & (1L << col)) != 0;
+  }
 
-    /**
-     * Changes the down-anchor bit on this square according to {@code value}.
-     * 
-     * @param value True to make this square a down anchor, false otherwise.
-     */
-    public void setDownAnchor(boolean value) {
-      down_.setValue(value);
-    }
+  /**
+   * Returns true if and only if the specified square is a down anchor.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   */
+  public boolean isDownAnchor(int row, int col) {
+    return (downAnchors_[col] & (1L << row)) != 0;
+  }
 
-    @Override
-    public Anchor transpose() {
-      return new Anchor(down_, across_);
-    }
+  /**
+   * Returns the across anchors of the given row, as a bitmask with bit
+   * {@code i} set if column {@code i} is an anchor.
+   * 
+   * @param row The row index.
+   */
+  public long getAcrossAnchors(int row) {
+    return acrossAnchors_[row];
   }
 
   /**
-   * This class encapsulates the vertical and horizontal cross-sets for a given
-   * square.
+   * Returns the down anchors of the given column, as a bitmask with bit
+   * {@code i} set if row {@code i} is an anchor.
+   * 
+   * @param col The column index.
    */
-  public static class CrossSet implements Transposable<CrossSet> {
-    private Set<Letter> across_;
-    private Set<Letter> down_;
+  public long getDownAnchors(int col) {
+    return downAnchors_[col];
+  }
 
-    /**
-     * Creates a new cross-set container.
-     * 
-     * @param allowedLetters The initial contents of both the across and down
-     *          cross-sets.
-     */
-    public CrossSet(Set<Letter> allowedLetters) {
-      this(new TreeSet<Letter>(allowedLetters),
-           new TreeSet<Letter>(allowedLetters));
-    }
+  /**
+   * Sets the across anchors of the given row.
+   * 
+   * @param row The row index.
+   * @param anchors The bitmask of anchor columns.
+   * @see #getAcrossAnchors(int)
+   */
+  public void setAcrossAnchors(int row, long anchors) {
+    acrossAnchors_[row] = anchors;
+  }
 
-    /**
-     * Creates a new cross-set container using the given sets.
-     * 
-     * @param across The across set to use.
-     * @param down The down set to use.
-     */
-    private CrossSet(Set<Letter> across, Set<Letter> down) {
-      across_ = across;
-      down_ = down;
-    }
+  /**
+   * Sets the down anchors of the given column.
+   * 
+   * @param col The column index.
+   * @param anchors The bitmask of anchor rows.
+   * @see #getDownAnchors(int)
+   */
+  public void setDownAnchors(int col, long anchors) {
+    downAnchors_[col] = anchors;
+  }
 
-    /**
-     * Returns the set of letters that are allowed for across moves on this
-     * square.
-     */
-    public Set<Letter> getAcrossSet() {
-      return across_;
-    }
+  /**
+   * Returns the bitmask of letters that are allowed for across moves on the
+   * specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   */
+  public long getAcrossSet(int row, int col) {
+    return acrossSets_[index(row, col)];
+  }
 
-    /**
-     * Returns the set of letters that are allowed for down moves on this
-     * square.
-     */
-    public Set<Letter> getDownSet() {
-      return down_;
-    }
+  /**
+   * Returns the bitmask of letters that are allowed for down moves on the
+   * specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   */
+  public long getDownSet(int row, int col) {
+    return downSets_[index(row, col)];
+  }
 
-    @Override
-    public CrossSet transpose() {
-      return new CrossSet(down_, across_);
-    }
+  /**
+   * Sets the bitmask of letters that are allowed for across moves on the
+   * specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   * @param letters The bitmask to use.
+   */
+  public void setAcrossSet(int row, int col, long letters) {
+    acrossSets_[index(row, col)] = letters;
   }
 
-  private Anchor anchor_;
-  private CrossSet crossSet_;
+  /**
+   * Sets the bitmask of letters that are allowed for down moves on the
+   * specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   * @param letters The bitmask to use.
+   */
+  public void setDownSet(int row, int col, long letters) {
+    downSets_[index(row, col)] = letters;
+  }
 
   /**
-   * Creates a new container.
+   * Returns the total value of the tiles directly above and below the
+   * specified square, up to the nearest empty squares, or {@link #NO_CROSS_SUM}
+   * if there are no such tiles. This is the value of the cross-word formed by
+   * an across move on this square, excluding the placed tile.
    * 
-   * @param initialCrossSet The initial contents of both the across and down
-   *          cross-sets.
+   * @param row The row index.
+   * @param col The column index.
    */
-  public SquareData(Set<Letter> initialCrossSet) {
-    this(new Anchor(), new CrossSet(initialCrossSet));
+  public int getAcrossSum(int row, int col) {
+    return acrossSums_[index(row, col)];
   }
 
   /**
-   * Creates a new container using the given backing objects.
+   * Returns the total value of the tiles directly left and right of the
+   * specified square, up to the nearest empty squares, or {@link #NO_CROSS_SUM}
+   * if there are no such tiles. This is the value of the cross-word formed by a
+   * down move on this square, excluding the placed tile.
    * 
-   * @param anchor The {@link Anchor} to use.
-   * @param crossSet The {@link CrossSet} to use.
+   * @param row The row index.
+   * @param col The column index.
    */
-  private SquareData(Anchor anchor, CrossSet crossSet) {
-    anchor_ = anchor;
-    crossSet_ = crossSet;
+  public int getDownSum(int row, int col) {
+    return downSums_[index(row, col)];
   }
 
   /**
-   * Returns the {@link Anchor} object for this square.
+   * Sets the cross-sum used for across moves on the specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   * @param sum The cross-sum to use.
+   * @see #getAcrossSum(int, int)
    */
-  public Anchor getAnchor() {
-    return anchor_;
+  public void setAcrossSum(int row, int col, int sum) {
+    acrossSums_[index(row, col)] = sum;
   }
 
   /**
-   * Returns the {@link CrossSet} object for this square.
+   * Sets the cross-sum used for down moves on the specified square.
+   * 
+   * @param row The row index.
+   * @param col The column index.
+   * @param sum The cross-sum to use.
+   * @see #getDownSum(int, int)
    */
-  public CrossSet getCrossSet() {
-    return crossSet_;
+  public void setDownSum(int row, int col, int sum) {
+    downSums_[index(row, col)] = sum;
   }
 
+  /**
+   * Returns the transposed view of this store, which is backed by this store.
+   * No new objects are created by this operation.
+   */
   @Override
   public SquareData transpose() {
-    return new SquareData(anchor_.transpose(), crossSet_.transpose());
+    return transpose_;
+  }
+
+  /**
+   * Returns the index of the specified square in the backing arrays, which are
+   * always laid out in the orientation of the untransposed store.
+   */
+  private int index(int row, int col) {
+    return transposed_ ? col * size_ + row : row * size_ + col;
   }
 }
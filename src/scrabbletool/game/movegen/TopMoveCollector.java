@@ -0,0 +1,208 @@
+package scrabbletool.game.movegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import scrabbletool.game.Move;
+
+/**
+ * <p>
+ * A {@link MoveGenerator.MoveHandler} that keeps only the best moves it is
+ * given, according to an {@link Evaluator}.
+ * </p>
+ * <p>
+ * The retained moves are kept in a bounded binary min-heap keyed by their
+ * values, stored as a primitive {@code int} array alongside the moves, so the
+ * worst retained move can be found and replaced in logarithmic time. Memory use
+ * is proportional to the number of moves retained, not the number generated.
+ * </p>
+ * <p>
+ * As a {@link MoveGenerator.EquityHandler}, the collector ranks the moves it
+ * is given by their equity instead, and its evaluator is not used.
+ * </p>
+ */
+public class TopMoveCollector implements MoveGenerator.MoveHandler,
+    MoveGenerator.EquityHandler {
+  /**
+   * Assigns a value to each move, such as its score or equity. Higher values
+   * are better.
+   */
+  public interface Evaluator {
+    /**
+     * Returns the value of the given move.
+     * 
+     * @param move The move to evaluate.
+     * @param score The score of the move.
+     */
+    public int evaluate(Move move, int score);
+  }
+
+  /**
+   * An {@link Evaluator} that ranks moves by their score.
+   */
+  public static final Evaluator SCORE = new Evaluator() {
+    @Override
+    public int evaluate(Move move, int score) {
+      return score;
+    }
+  };
+
+  private Evaluator evaluator_;
+  private int[] values_;
+  private Move[] moves_;
+  private int size_;
+
+  /**
+   * Creates a collector that retains the {@code capacity} highest-scoring
+   * moves.
+   * 
+   * @param capacity The maximum number of moves to retain.
+   */
+  public TopMoveCollector(int capacity) {
+    this(capacity, SCORE);
+  }
+
+  /**
+   * Creates a collector that retains at most {@code capacity} moves.
+   * 
+   * @param capacity The maximum number of moves to retain.
+   * @param evaluator The evaluator used to rank the moves.
+   */
+  public TopMoveCollector(int capacity, Evaluator evaluator) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Cannot create a collector with "
+                                         + "capacity " + capacity
+                                         + ". Capacity must be >= 1.");
+    evaluator_ = evaluator;
+    values_ = new int[capacity];
+    moves_ = new Move[capacity];
+    size_ = 0;
+  }
+
+  @Override
+  public void handleMove(Move move, int score) {
+    add(move, evaluator_.evaluate(move, score));
+  }
+
+  @Override
+  public void handleMove(Move move, int score, int equity) {
+    add(move, equity);
+  }
+
+  /**
+   * Returns the number of moves currently retained.
+   */
+  public int size() {
+    return size_;
+  }
+
+  /**
+   * Returns the retained moves, best first. Moves with equal values are
+   * returned in no particular order.
+   */
+  public List<Move> getMoves() {
+    Move[] moves = sortedCopy().moves_;
+    List<Move> result = new ArrayList<Move>(size_);
+    for (int i = 0; i < size_; i++)
+      result.add(moves[i]);
+    return result;
+  }
+
+  /**
+   * Returns the values of the retained moves, in the same order as
+   * {@link #getMoves()}.
+   */
+  public int[] getValues() {
+    return Arrays.copyOf(sortedCopy().values_, size_);
+  }
+
+  /**
+   * Removes all retained moves.
+   */
+  public void clear() {
+    for (int i = 0; i < size_; i++)
+      moves_[i] = null;
+    size_ = 0;
+  }
+
+  /**
+   * Returns a copy of this collector whose retained moves are sorted best
+   * first. The copy's arrays are no longer a valid heap.
+   */
+  private TopMoveCollector sortedCopy() {
+    TopMoveCollector copy = new TopMoveCollector(size_ == 0 ? 1 : size_,
+                                                 evaluator_);
+    System.arraycopy(values_, 0, copy.values_, 0, size_);
+    System.arraycopy(moves_, 0, copy.moves_, 0, size_);
+
+    // Heap-sort the copy by repeatedly moving its worst move to the end.
+    for (copy.size_ = size_; copy.size_ > 1;) {
+      copy.swap(0, --copy.size_);
+      copy.siftDown(0);
+    }
+    return copy;
+  }
+
+  /**
+   * Adds the given move to the heap if it is among the best moves seen.
+   */
+  private void add(Move move, int value) {
+    if (size_ < values_.length) {
+      // The heap is not yet full, so add the move as a new leaf.
+      values_[size_] = value;
+      moves_[size_] = move;
+      siftUp(size_++);
+    } else if (value > values_[0]) {
+      // Otherwise, the move replaces the worst retained move at the root.
+      values_[0] = value;
+      moves_[0] = move;
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Moves the entry at index {@code i} up the heap until its parent is no
+   * greater than it.
+   */
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (values_[parent] <= values_[i])
+        return;
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  /**
+   * Moves the entry at index {@code i} down the heap until neither of its
+   * children is less than it.
+   */
+  private void siftDown(int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < size_ && values_[left] < values_[smallest])
+        smallest = left;
+      if (right < size_ && values_[right] < values_[smallest])
+        smallest = right;
+      if (smallest == i)
+        return;
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  /**
+   * Swaps the heap entries at the given indices.
+   */
+  private void swap(int i, int j) {
+    int value = values_[i];
+    values_[i] = values_[j];
+    values_[j] = value;
+    Move move = moves_[i];
+    moves_[i] = moves_[j];
+    moves_[j] = move;
+  }
+}
@@ -0,0 +1,29 @@
+package scrabbletool.game.movegen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for updating the move generation data after a move
+ * is played. Its fields are only filled in if the event is being recorded.
+ */
+@Name("scrabbletool.BoardUpdate")
+@Label("Board Update")
+@Category("ScrabbleTool")
+@Description("Updating the anchors, cross-sets and cross-sums after a move")
+final class UpdateEvent extends jdk.jfr.Event {
+  @Label("Across")
+  boolean across;
+
+  @Label("Row Or Column")
+  int rowOrCol;
+
+  @Label("Tiles Placed")
+  int tilesPlaced;
+
+  @Label("Squares Touched")
+  @Description("The number of squares whose cross-set was recomputed")
+  int squaresTouched;
+}
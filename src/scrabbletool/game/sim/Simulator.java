@@ -0,0 +1,464 @@
+package scrabbletool.game.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import scrabbletool.game.Game;
+import scrabbletool.game.Move;
+import scrabbletool.game.ScoreCalculator;
+import scrabbletool.game.TileBag;
+import scrabbletool.game.board.Blank;
+import scrabbletool.game.board.BoardUtilities;
+import scrabbletool.game.board.Tile;
+import scrabbletool.game.movegen.MoveGenerator;
+import scrabbletool.game.movegen.TopMoveCollector;
+
+/**
+ * <p>
+ * Evaluates candidate moves by Monte Carlo simulation. Each iteration deals
+ * the opponent a random rack from the unseen tiles, then plays out a fixed
+ * number of plies after each candidate, with both players making their
+ * highest-scoring move. A candidate is judged by the resulting point spread.
+ * </p>
+ * <p>
+ * Iterations are spread across a number of threads, each of which works on
+ * its own copy of the board, so the threads share nothing but a counter and
+ * the simulation scales with the number of cores. Every candidate is played
+ * out against the same draws in a given iteration, which makes the
+ * comparison between candidates much less noisy than independent draws
+ * would.
+ * </p>
+ */
+public class Simulator {
+  /**
+   * The default number of plies played after each candidate.
+   */
+  public static final int DEFAULT_NUM_PLIES = 2;
+
+  /**
+   * The default maximum number of iterations.
+   */
+  public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+  /**
+   * The simulation results for a single candidate move.
+   */
+  public static class Result {
+    private Move move_;
+    private int score_;
+    private long numIterations_;
+    private double totalSpread_;
+    private double totalSquaredSpread_;
+    private double wins_;
+
+    private Result(Move move, int score) {
+      move_ = move;
+      score_ = score;
+    }
+
+    /**
+     * Returns the candidate move.
+     */
+    public Move getMove() {
+      return move_;
+    }
+
+    /**
+     * Returns the score of the candidate move.
+     */
+    public int getScore() {
+      return score_;
+    }
+
+    /**
+     * Returns the number of iterations that the move was simulated for.
+     */
+    public long getNumIterations() {
+      return numIterations_;
+    }
+
+    /**
+     * Returns the mean point spread after the move and the simulated plies,
+     * including the move's own score.
+     */
+    public double getMean() {
+      return numIterations_ == 0 ? 0 : totalSpread_ / numIterations_;
+    }
+
+    /**
+     * Returns the standard deviation of the point spread.
+     */
+    public double getStdDev() {
+      if (numIterations_ < 2)
+        return 0;
+      double mean = getMean();
+      double variance = (totalSquaredSpread_ - numIterations_ * mean * mean)
+                        / (numIterations_ - 1);
+      return Math.sqrt(Math.max(variance, 0));
+    }
+
+    /**
+     * Returns the fraction of iterations in which the player was ahead at the
+     * end, counting ties as half a win.
+     */
+    public double getWinRate() {
+      return numIterations_ == 0 ? 0 : wins_ / numIterations_;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("score %d, mean %.2f, stdev %.2f, win %.1f%%",
+                           score_, getMean(), getStdDev(), 100 * getWinRate());
+    }
+  }
+
+  private Game game_;
+  private int numThreads_;
+  private int numPlies_;
+  private int maxIterations_;
+  private long timeBudgetMillis_;
+  private long seed_;
+  private int lead_;
+
+  /**
+   * Creates a new simulator.
+   * 
+   * @param game The game whose current position is simulated.
+   * @param numThreads The number of threads to simulate on.
+   */
+  public Simulator(Game game, int numThreads) {
+    if (numThreads < 1)
+      throw new IllegalArgumentException("Cannot simulate on " + numThreads
+                                         + " threads. There must be at "
+                                         + "least 1.");
+    game_ = game;
+    numThreads_ = numThreads;
+    numPlies_ = DEFAULT_NUM_PLIES;
+    maxIterations_ = DEFAULT_MAX_ITERATIONS;
+    timeBudgetMillis_ = 0;
+    seed_ = System.nanoTime();
+    lead_ = 0;
+  }
+
+  /**
+   * Sets the number of plies played after each candidate. The first ply is
+   * the opponent's.
+   * 
+   * @param numPlies The number of plies, which may be 0.
+   */
+  public void setNumPlies(int numPlies) {
+    numPlies_ = numPlies;
+  }
+
+  /**
+   * Sets the maximum number of iterations to run.
+   * 
+   * @param maxIterations The maximum number of iterations.
+   */
+  public void setMaxIterations(int maxIterations) {
+    maxIterations_ = maxIterations;
+  }
+
+  /**
+   * Sets the time after which no new iterations are started. Iterations that
+   * have already started are finished, so every candidate is simulated the
+   * same number of times.
+   * 
+   * @param timeBudgetMillis The time budget in milliseconds, or 0 for no
+   *          limit.
+   */
+  public void setTimeBudget(long timeBudgetMillis) {
+    timeBudgetMillis_ = timeBudgetMillis;
+  }
+
+  /**
+   * Sets the seed from which the random draws are made. Simulations with the
+   * same seed and parameters give the same results when they run the same
+   * number of iterations, regardless of the number of threads.
+   * 
+   * @param seed The seed.
+   */
+  public void setSeed(long seed) {
+    seed_ = seed;
+  }
+
+  /**
+   * Sets the player's current lead over the opponent, which decides whether a
+   * simulated game counts as a win.
+   * 
+   * @param lead The player's score minus the opponent's score.
+   */
+  public void setLead(int lead) {
+    lead_ = lead;
+  }
+
+  /**
+   * Simulates each of the given candidate moves from the game's current
+   * position. The game's board must not be modified until this method
+   * returns.
+   * 
+   * @param rack The player's rack.
+   * @param unseen The tiles that the player can't see: those in the bag and on
+   *          the opponent's rack, as made by {@link TileBag#newUnseenPool}.
+   *          The pool is not modified.
+   * @param candidates The moves to evaluate, which must be playable from
+   *          {@code rack}.
+   * @return The results for each candidate, in the same order as
+   *         {@code candidates}.
+   * @throws InterruptedException If the thread is interrupted while waiting
+   *           for the simulation to finish.
+   */
+  public List<Result> simulate(List<Tile> rack,
+                               TileBag unseen,
+                               List<Move> candidates) throws InterruptedException {
+    List<Result> results = new ArrayList<Result>(candidates.size());
+    for (Move candidate : candidates) {
+      if (removeTiles(new ArrayList<Tile>(rack), candidate) == null)
+        throw new IllegalArgumentException("Cannot simulate a move whose tiles "
+                                           + "are not on the rack.");
+      int score = ScoreCalculator.calculateScore(game_.getBoard(), candidate);
+      results.add(new Result(candidate, score));
+    }
+
+    long deadline = Long.MAX_VALUE;
+    if (timeBudgetMillis_ > 0)
+      deadline = System.nanoTime() + timeBudgetMillis_ * 1000000;
+    AtomicInteger nextIteration = new AtomicInteger(0);
+    List<Worker> workers = new ArrayList<Worker>(numThreads_);
+    for (int i = 0; i < numThreads_; i++)
+      workers.add(new Worker(rack, unseen, results, nextIteration, deadline));
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads_);
+    try {
+      List<Future<Worker>> futures = executor.invokeAll(workers);
+      for (Future<Worker> future : futures)
+        future.get().addTo(results);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new RuntimeException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * Removes the tiles placed by the given move from the given rack. A blank
+   * in the move is matched by a blank on the rack.
+   * 
+   * @param rack The rack to remove the tiles from.
+   * @param move The move.
+   * @return The rack, or {@code null} if it doesn't hold all of the move's
+   *         tiles.
+   */
+  private static List<Tile> removeTiles(List<Tile> rack, Move move) {
+    for (Tile placed : move.getTileMap().values()) {
+      boolean blank = placed instanceof Blank;
+      int i = 0;
+      for (; i < rack.size(); i++) {
+        Tile tile = rack.get(i);
+        if (blank ? tile instanceof Blank
+                  : !(tile instanceof Blank)
+                    && tile.getLetter().equals(placed.getLetter()))
+          break;
+      }
+      if (i == rack.size())
+        return null;
+      rack.remove(i);
+    }
+    return rack;
+  }
+
+  /**
+   * Returns the total value of the tiles on the given rack.
+   */
+  private static int getRackValue(List<Tile> rack) {
+    int value = 0;
+    for (Tile tile : rack)
+      value += BoardUtilities.getTileValue(tile);
+    return value;
+  }
+
+  /**
+   * Runs iterations on one thread, with its own copy of the game, until the
+   * iterations or the time budget run out. Its totals are kept privately and
+   * merged into the results when the simulation ends.
+   */
+  private class Worker implements Callable<Worker> {
+    private List<Tile> rack_;
+    private TileBag unseen_;
+    private List<Result> candidates_;
+    private AtomicInteger nextIteration_;
+    private long deadline_;
+
+    private MoveGenerator moveGen_;
+    private List<Move> played_;
+    private TopMoveCollector collector_;
+    private TileBag bag_;
+    private SplittableRandom random_;
+    private List<Tile> playerRack_;
+    private List<Tile> opponentRack_;
+
+    private long numIterations_;
+    private double[] totalSpreads_;
+    private double[] totalSquaredSpreads_;
+    private double[] wins_;
+
+    public Worker(List<Tile> rack,
+                  TileBag unseen,
+                  List<Result> candidates,
+                  AtomicInteger nextIteration,
+                  long deadline) {
+      rack_ = rack;
+      unseen_ = unseen;
+      candidates_ = candidates;
+      nextIteration_ = nextIteration;
+      deadline_ = deadline;
+
+      // The copy is made on the calling thread, while the game's board is
+      // known not to change. Every play-out starts and ends on the root
+      // position, so the generator's data is only built once.
+      Game gameCopy = game_.copy();
+      moveGen_ = new MoveGenerator(gameCopy, gameCopy.getGADDAG());
+      played_ = new ArrayList<Move>();
+      collector_ = new TopMoveCollector(1);
+      playerRack_ = new ArrayList<Tile>(Game.RACK_SIZE);
+      opponentRack_ = new ArrayList<Tile>(Game.RACK_SIZE);
+      totalSpreads_ = new double[candidates.size()];
+      totalSquaredSpreads_ = new double[candidates.size()];
+      wins_ = new double[candidates.size()];
+    }
+
+    @Override
+    public Worker call() {
+      while (System.nanoTime() < deadline_) {
+        int iteration = nextIteration_.getAndIncrement();
+        if (iteration >= maxIterations_)
+          break;
+        long iterationSeed = seed_ + iteration * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < candidates_.size(); i++) {
+          random_ = new SplittableRandom(iterationSeed);
+          int spread = playOut(candidates_.get(i));
+          totalSpreads_[i] += spread;
+          totalSquaredSpreads_[i] += (double) spread * spread;
+          int finalLead = lead_ + spread;
+          wins_[i] += finalLead > 0 ? 1 : finalLead == 0 ? 0.5 : 0;
+        }
+        numIterations_++;
+      }
+      return this;
+    }
+
+    /**
+     * Adds this worker's totals to the given results.
+     */
+    public void addTo(List<Result> results) {
+      for (int i = 0; i < results.size(); i++) {
+        Result result = results.get(i);
+        result.numIterations_ += numIterations_;
+        result.totalSpread_ += totalSpreads_[i];
+        result.totalSquaredSpread_ += totalSquaredSpreads_[i];
+        result.wins_ += wins_[i];
+      }
+    }
+
+    /**
+     * Plays the given candidate on this worker's board, which must hold the
+     * root position, and then plays out the following plies. The board is
+     * returned to the root position afterwards.
+     * 
+     * @param candidate The candidate to play.
+     * @return The player's points minus the opponent's points, over the
+     *         candidate and the following plies.
+     */
+    private int playOut(Result candidate) {
+      int spread = playMoves(candidate);
+
+      // Take the moves back, newest first.
+      for (int i = played_.size() - 1; i >= 0; i--)
+        moveGen_.unmakeMove(played_.get(i));
+      played_.clear();
+      return spread;
+    }
+
+    /**
+     * Plays the given candidate and the following plies, recording each move
+     * played in |played_|.
+     * 
+     * @param candidate The candidate to play.
+     * @return The player's points minus the opponent's points, over the
+     *         candidate and the following plies.
+     */
+    private int playMoves(Result candidate) {
+      // Copying the pool is cheap, since the copy shares its storage until
+      // the first draw.
+      bag_ = unseen_.copy();
+      opponentRack_.clear();
+      draw(opponentRack_);
+      playerRack_.clear();
+      playerRack_.addAll(rack_);
+      removeTiles(playerRack_, candidate.getMove());
+      draw(playerRack_);
+
+      int spread = candidate.getScore();
+      if (playerRack_.isEmpty())
+        return spread + 2 * getRackValue(opponentRack_);
+
+      play(candidate.getMove());
+      int numPasses = 0;
+      for (int ply = 0; ply < numPlies_ && numPasses < 2; ply++) {
+        boolean opponent = ply % 2 == 0;
+        List<Tile> rack = opponent ? opponentRack_ : playerRack_;
+        collector_.clear();
+        moveGen_.generate(rack, collector_);
+        if (collector_.size() == 0) {
+          numPasses++;
+          continue;
+        }
+        numPasses = 0;
+
+        Move move = collector_.getMoves().get(0);
+        int score = collector_.getValues()[0];
+        play(move);
+        removeTiles(rack, move);
+        draw(rack);
+        spread += opponent ? -score : score;
+
+        // A player who uses every tile when the bag is empty ends the game,
+        // and gains the value of the other player's tiles.
+        if (rack.isEmpty()) {
+          int otherValue = getRackValue(opponent ? playerRack_ : opponentRack_);
+          spread += opponent ? -2 * otherValue : 2 * otherValue;
+          break;
+        }
+      }
+      return spread;
+    }
+
+    /**
+     * Plays the given move on this worker's board, so that it can be taken
+     * back by {@link #playOut(Result)}.
+     */
+    private void play(Move move) {
+      moveGen_.makeMove(move);
+      played_.add(move);
+    }
+
+    /**
+     * Fills the given rack from the bag, as far as the bag allows.
+     */
+    private void draw(List<Tile> rack) {
+      bag_.fill(rack, Game.RACK_SIZE, random_);
+    }
+  }
+}